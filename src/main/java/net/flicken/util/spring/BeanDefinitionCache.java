@@ -0,0 +1,637 @@
+package net.flicken.util.spring;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.AutowireCandidateQualifier;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedProperties;
+import org.springframework.beans.factory.support.ManagedSet;
+import org.springframework.core.AttributeAccessor;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+
+/**
+ * Binary file of post-processed bean definitions, so that a context can be started
+ * without parsing its XML or running its {@code BeanFactoryPostProcessor}s again.
+ *
+ * Definitions of post-processors are cached along with all others, as many also have
+ * roles at runtime, such as {@link RegistrationCoordinator}.  Those whose effect is on the
+ * definitions are marked with {@link #APPLIED_ATTRIBUTE} and not invoked again; those
+ * implementing {@link ReappliedPostProcessor} are.
+ *
+ * The file is keyed by a checksum of the contents of the source resources, including
+ * any imported resources, and is ignored once any of them change.  Definitions are
+ * written with a compact, gzipped encoding rather than Java serialization, since most
+ * definition values (bean references, typed strings, constructor arguments) are not
+ * {@link java.io.Serializable}.  Definitions with method overrides or values of other
+ * types cannot be cached, and {@link #write} fails with an {@link IllegalArgumentException}.
+ *
+ * Usually used via {@link CachingClassPathXmlApplicationContext}.
+ *
+ * @see BeanDefinitionCacheWriter
+ * @see CachingClassPathXmlApplicationContext
+ * @author broberts
+ */
+public class BeanDefinitionCache {
+	private static final int MAGIC = 0x53424443;
+	private static final int VERSION = 2;
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int BOOLEAN = 2;
+	private static final int INTEGER = 3;
+	private static final int LONG = 4;
+	private static final int DOUBLE = 5;
+	private static final int TYPED_STRING = 6;
+	private static final int BEAN_REFERENCE = 7;
+	private static final int BEAN_NAME_REFERENCE = 8;
+	private static final int BEAN_DEFINITION_HOLDER = 9;
+	private static final int BEAN_DEFINITION = 10;
+	private static final int LIST = 11;
+	private static final int SET = 12;
+	private static final int MAP = 13;
+	private static final int PROPERTIES = 14;
+
+	/** Attribute marking post-processors whose effect is already part of the cached definitions */
+	public static final String APPLIED_ATTRIBUTE = BeanDefinitionCache.class.getName() + ".applied";
+
+	private final File file;
+
+	public BeanDefinitionCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Registers the cached definitions and aliases with {@code registry}, if the cache
+	 * exists and is up to date for {@code resources}.
+	 *
+	 * @param registry registry in which to register cached definitions
+	 * @param resources resources from which the definitions were loaded
+	 * @return whether any definitions were registered, {@code false} if the cache is
+	 * 	missing, stale or unreadable
+	 */
+	public boolean read(BeanDefinitionRegistry registry, Resource[] resources) {
+		if (!file.isFile()) {
+			return false;
+		}
+		Map<String, BeanDefinitionHolder> definitions;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			try {
+				definitions = new Input(in).readCache(resources);
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Cannot read bean definition cache " + file, e);
+			return false;
+		}
+		if (definitions == null) {
+			log.info("Bean definition cache " + file + " is out of date");
+			return false;
+		}
+
+		for (BeanDefinitionHolder holder : definitions.values()) {
+			registry.registerBeanDefinition(holder.getBeanName(), holder.getBeanDefinition());
+			for (String alias : holder.getAliases()) {
+				registry.registerAlias(holder.getBeanName(), alias);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the definitions and aliases in {@code beanFactory} to the cache, replacing
+	 * any existing cache.
+	 *
+	 * @param beanFactory factory whose definitions are cached
+	 * @param resources resources from which the definitions were loaded
+	 * @param importedResources resources imported by {@code resources}
+	 * @param excludedBeanNames names of definitions not to cache
+	 * @throws IllegalArgumentException if a definition cannot be cached
+	 */
+	public void write(ConfigurableListableBeanFactory beanFactory, Resource[] resources, Resource[] importedResources,
+			Set<String> excludedBeanNames) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		directory.mkdirs();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+			try {
+				new Output(out).writeCache(beanFactory, resources, importedResources, excludedBeanNames);
+			} finally {
+				out.close();
+			}
+			if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+				throw new IOException("Cannot replace " + file);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Checksum of the contents of {@code resources}, in order.
+	 */
+	public static String checksum(Resource[] resources) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[8192];
+		for (Resource resource : resources) {
+			InputStream in = resource.getInputStream();
+			try {
+				long length = 0;
+				for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+					digest.update(buffer, 0, read);
+					length += read;
+				}
+				for (int shift = 56; shift >= 0; shift -= 8) {
+					digest.update((byte) (length >>> shift));
+				}
+			} finally {
+				in.close();
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Whether {@code definition} is of a post-processor which has already been applied
+	 * to the cached definitions.
+	 */
+	public static boolean isApplied(BeanDefinition definition) {
+		Object applied = definition.getAttribute(APPLIED_ATTRIBUTE);
+		return Boolean.TRUE.equals(applied) || "true".equals(applied);
+	}
+
+	// Inner classes
+	/**
+	 * Post-processor whose effect is not only on bean definitions, e.g. configuring the bean
+	 * factory itself, so which is invoked again when definitions are loaded from the cache.
+	 * It must then give the same result on definitions it has already processed.
+	 */
+	public static interface ReappliedPostProcessor extends BeanFactoryPostProcessor {
+	}
+
+	/**
+	 * Writes definitions, replacing repeated strings such as class names with
+	 * references to their first occurrence.
+	 */
+	private static class Output {
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		Output(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void writeCache(ConfigurableListableBeanFactory beanFactory, Resource[] resources, Resource[] importedResources,
+				Set<String> excludedBeanNames) throws IOException {
+			Resource[] sources = new Resource[resources.length + importedResources.length];
+			System.arraycopy(resources, 0, sources, 0, resources.length);
+			System.arraycopy(importedResources, 0, sources, resources.length, importedResources.length);
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(checksum(sources));
+			out.writeInt(importedResources.length);
+			for (Resource resource : importedResources) {
+				out.writeUTF(resource.getURL().toExternalForm());
+			}
+
+			List<String> names = new ArrayList<String>();
+			for (String name : beanFactory.getBeanDefinitionNames()) {
+				if (!excludedBeanNames.contains(name)) {
+					names.add(name);
+				}
+			}
+			out.writeInt(names.size());
+			for (String name : names) {
+				writeHolder(new BeanDefinitionHolder(beanFactory.getBeanDefinition(name), name, beanFactory.getAliases(name)));
+			}
+		}
+
+		void writeHolder(BeanDefinitionHolder holder) throws IOException {
+			writeString(holder.getBeanName());
+			writeStrings(holder.getAliases());
+			writeDefinition(holder.getBeanName(), holder.getBeanDefinition());
+		}
+
+		void writeDefinition(String name, BeanDefinition definition) throws IOException {
+			if (!(definition instanceof AbstractBeanDefinition)) {
+				throw new IllegalArgumentException("Cannot cache bean '" + name + "', unsupported definition " + definition.getClass().getName());
+			}
+			AbstractBeanDefinition bd = (AbstractBeanDefinition) definition;
+			if (!bd.getMethodOverrides().isEmpty()) {
+				throw new IllegalArgumentException("Cannot cache bean '" + name + "', method overrides are not supported");
+			}
+
+			writeString(bd.getParentName());
+			writeString(bd.getBeanClassName());
+			writeString(bd.getScope());
+			out.writeBoolean(bd.isAbstract());
+			out.writeBoolean(bd.isLazyInit());
+			out.writeInt(bd.getAutowireMode());
+			out.writeInt(bd.getDependencyCheck());
+			writeStrings(bd.getDependsOn());
+			out.writeBoolean(bd.isAutowireCandidate());
+			out.writeBoolean(bd.isPrimary());
+			writeString(bd.getFactoryBeanName());
+			writeString(bd.getFactoryMethodName());
+			writeString(bd.getInitMethodName());
+			out.writeBoolean(bd.isEnforceInitMethod());
+			writeString(bd.getDestroyMethodName());
+			out.writeBoolean(bd.isEnforceDestroyMethod());
+			out.writeBoolean(bd.isSynthetic());
+			out.writeInt(bd.getRole());
+			writeString(bd.getDescription());
+			writeString(bd.getResourceDescription());
+			writeAttributes(name, bd);
+
+			Set<?> qualifiers = bd.getQualifiers();
+			out.writeInt(qualifiers.size());
+			for (Object qualifier : qualifiers) {
+				writeString(((AutowireCandidateQualifier) qualifier).getTypeName());
+				writeAttributes(name, (AutowireCandidateQualifier) qualifier);
+			}
+
+			PropertyValue[] properties = bd.getPropertyValues().getPropertyValues();
+			out.writeInt(properties.length);
+			for (PropertyValue property : properties) {
+				writeString(property.getName());
+				writeValue(name, property.getValue());
+			}
+
+			ConstructorArgumentValues arguments = bd.getConstructorArgumentValues();
+			Map<?, ?> indexed = arguments.getIndexedArgumentValues();
+			out.writeInt(indexed.size());
+			for (Map.Entry<?, ?> entry : indexed.entrySet()) {
+				out.writeInt((Integer) entry.getKey());
+				writeValueHolder(name, (ValueHolder) entry.getValue());
+			}
+			List<?> generic = arguments.getGenericArgumentValues();
+			out.writeInt(generic.size());
+			for (Object holder : generic) {
+				writeValueHolder(name, (ValueHolder) holder);
+			}
+		}
+
+		void writeAttributes(String name, AttributeAccessor accessor) throws IOException {
+			String[] attributeNames = accessor.attributeNames();
+			out.writeInt(attributeNames.length);
+			for (String attributeName : attributeNames) {
+				writeString(attributeName);
+				writeValue(name, accessor.getAttribute(attributeName));
+			}
+		}
+
+		void writeValueHolder(String name, ValueHolder holder) throws IOException {
+			writeValue(name, holder.getValue());
+			writeString(holder.getType());
+		}
+
+		void writeValue(String name, Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(NULL);
+			} else if (value instanceof String) {
+				out.writeByte(STRING);
+				writeString((String) value);
+			} else if (value instanceof Boolean) {
+				out.writeByte(BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			} else if (value instanceof Integer) {
+				out.writeByte(INTEGER);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) value);
+			} else if (value instanceof Double) {
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (value instanceof TypedStringValue) {
+				TypedStringValue typed = (TypedStringValue) value;
+				out.writeByte(TYPED_STRING);
+				writeString(typed.getValue());
+				writeString(typed.getTargetTypeName());
+			} else if (value instanceof RuntimeBeanReference) {
+				RuntimeBeanReference reference = (RuntimeBeanReference) value;
+				out.writeByte(BEAN_REFERENCE);
+				writeString(reference.getBeanName());
+				out.writeBoolean(reference.isToParent());
+			} else if (value instanceof RuntimeBeanNameReference) {
+				out.writeByte(BEAN_NAME_REFERENCE);
+				writeString(((RuntimeBeanNameReference) value).getBeanName());
+			} else if (value instanceof BeanDefinitionHolder) {
+				out.writeByte(BEAN_DEFINITION_HOLDER);
+				writeHolder((BeanDefinitionHolder) value);
+			} else if (value instanceof BeanDefinition) {
+				out.writeByte(BEAN_DEFINITION);
+				writeDefinition(name, (BeanDefinition) value);
+			} else if (value instanceof ManagedList) {
+				out.writeByte(LIST);
+				out.writeBoolean(((ManagedList) value).isMergeEnabled());
+				writeValues(name, (Collection<?>) value);
+			} else if (value instanceof ManagedSet) {
+				out.writeByte(SET);
+				out.writeBoolean(((ManagedSet) value).isMergeEnabled());
+				writeValues(name, (Collection<?>) value);
+			} else if (value instanceof ManagedMap) {
+				out.writeByte(MAP);
+				out.writeBoolean(((ManagedMap) value).isMergeEnabled());
+				writeEntries(name, (Map<?, ?>) value);
+			} else if (value instanceof ManagedProperties) {
+				out.writeByte(PROPERTIES);
+				out.writeBoolean(((ManagedProperties) value).isMergeEnabled());
+				writeEntries(name, (Map<?, ?>) value);
+			} else {
+				throw new IllegalArgumentException("Cannot cache bean '" + name + "', unsupported value " + value.getClass().getName());
+			}
+		}
+
+		void writeValues(String name, Collection<?> values) throws IOException {
+			out.writeInt(values.size());
+			for (Object value : values) {
+				writeValue(name, value);
+			}
+		}
+
+		void writeEntries(String name, Map<?, ?> entries) throws IOException {
+			out.writeInt(entries.size());
+			for (Map.Entry<?, ?> entry : entries.entrySet()) {
+				writeValue(name, entry.getKey());
+				writeValue(name, entry.getValue());
+			}
+		}
+
+		void writeStrings(String[] values) throws IOException {
+			if (values == null) {
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(values.length);
+			for (String value : values) {
+				writeString(value);
+			}
+		}
+
+		void writeString(String value) throws IOException {
+			if (value == null) {
+				out.writeInt(-1);
+				return;
+			}
+			Integer index = strings.get(value);
+			if (index != null) {
+				out.writeInt(index);
+				return;
+			}
+			strings.put(value, strings.size());
+			out.writeInt(-2);
+			out.writeUTF(value);
+		}
+	}
+
+	private static class Input {
+		private final DataInputStream in;
+		private final List<String> strings = new ArrayList<String>();
+
+		Input(DataInputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * @return the definitions by name, or {@code null} if the cache is not for {@code resources}
+		 */
+		Map<String, BeanDefinitionHolder> readCache(Resource[] resources) throws IOException {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			String checksum = in.readUTF();
+			Resource[] sources = new Resource[resources.length + in.readInt()];
+			System.arraycopy(resources, 0, sources, 0, resources.length);
+			for (int i = resources.length; i < sources.length; i++) {
+				sources[i] = new UrlResource(in.readUTF());
+			}
+			try {
+				if (!checksum.equals(checksum(sources))) {
+					return null;
+				}
+			} catch (IOException e) {
+				log.fine("Cannot read bean definition source: " + e);
+				return null;
+			}
+
+			int count = in.readInt();
+			Map<String, BeanDefinitionHolder> definitions = new LinkedHashMap<String, BeanDefinitionHolder>(count * 2);
+			for (int i = 0; i < count; i++) {
+				BeanDefinitionHolder holder = readHolder();
+				definitions.put(holder.getBeanName(), holder);
+			}
+			return definitions;
+		}
+
+		BeanDefinitionHolder readHolder() throws IOException {
+			String name = readString();
+			String[] aliases = readStrings();
+			return new BeanDefinitionHolder(readDefinition(), name, aliases);
+		}
+
+		AbstractBeanDefinition readDefinition() throws IOException {
+			GenericBeanDefinition bd = new GenericBeanDefinition();
+			bd.setParentName(readString());
+			bd.setBeanClassName(readString());
+			bd.setScope(readString());
+			bd.setAbstract(in.readBoolean());
+			bd.setLazyInit(in.readBoolean());
+			bd.setAutowireMode(in.readInt());
+			bd.setDependencyCheck(in.readInt());
+			bd.setDependsOn(readStrings());
+			bd.setAutowireCandidate(in.readBoolean());
+			bd.setPrimary(in.readBoolean());
+			bd.setFactoryBeanName(readString());
+			bd.setFactoryMethodName(readString());
+			bd.setInitMethodName(readString());
+			bd.setEnforceInitMethod(in.readBoolean());
+			bd.setDestroyMethodName(readString());
+			bd.setEnforceDestroyMethod(in.readBoolean());
+			bd.setSynthetic(in.readBoolean());
+			bd.setRole(in.readInt());
+			bd.setDescription(readString());
+			bd.setResourceDescription(readString());
+			readAttributes(bd);
+
+			for (int i = in.readInt(); i > 0; i--) {
+				AutowireCandidateQualifier qualifier = new AutowireCandidateQualifier(readString());
+				readAttributes(qualifier);
+				bd.addQualifier(qualifier);
+			}
+
+			MutablePropertyValues properties = new MutablePropertyValues();
+			for (int i = in.readInt(); i > 0; i--) {
+				String name = readString();
+				properties.addPropertyValue(name, readValue());
+			}
+			bd.setPropertyValues(properties);
+
+			ConstructorArgumentValues arguments = new ConstructorArgumentValues();
+			for (int i = in.readInt(); i > 0; i--) {
+				int index = in.readInt();
+				Object value = readValue();
+				arguments.addIndexedArgumentValue(index, value, readString());
+			}
+			for (int i = in.readInt(); i > 0; i--) {
+				Object value = readValue();
+				arguments.addGenericArgumentValue(new ValueHolder(value, readString()));
+			}
+			bd.setConstructorArgumentValues(arguments);
+			return bd;
+		}
+
+		void readAttributes(AttributeAccessor accessor) throws IOException {
+			for (int i = in.readInt(); i > 0; i--) {
+				String name = readString();
+				accessor.setAttribute(name, readValue());
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		Object readValue() throws IOException {
+			int type = in.readByte();
+			switch (type) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString();
+			case BOOLEAN:
+				return in.readBoolean();
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case TYPED_STRING:
+				String value = readString();
+				String targetTypeName = readString();
+				return targetTypeName != null ? new TypedStringValue(value, targetTypeName) : new TypedStringValue(value);
+			case BEAN_REFERENCE:
+				String beanName = readString();
+				return new RuntimeBeanReference(beanName, in.readBoolean());
+			case BEAN_NAME_REFERENCE:
+				return new RuntimeBeanNameReference(readString());
+			case BEAN_DEFINITION_HOLDER:
+				return readHolder();
+			case BEAN_DEFINITION:
+				return readDefinition();
+			case LIST:
+				ManagedList list = new ManagedList();
+				list.setMergeEnabled(in.readBoolean());
+				readValues(list);
+				return list;
+			case SET:
+				ManagedSet set = new ManagedSet();
+				set.setMergeEnabled(in.readBoolean());
+				readValues(set);
+				return set;
+			case MAP:
+				ManagedMap map = new ManagedMap();
+				map.setMergeEnabled(in.readBoolean());
+				readEntries(map);
+				return map;
+			case PROPERTIES:
+				ManagedProperties properties = new ManagedProperties();
+				properties.setMergeEnabled(in.readBoolean());
+				readEntries(properties);
+				return properties;
+			default:
+				throw new IOException("Corrupt bean definition cache, unknown value type " + type);
+			}
+		}
+
+		void readValues(Collection<Object> values) throws IOException {
+			for (int i = in.readInt(); i > 0; i--) {
+				values.add(readValue());
+			}
+		}
+
+		void readEntries(Map<Object, Object> entries) throws IOException {
+			for (int i = in.readInt(); i > 0; i--) {
+				Object key = readValue();
+				entries.put(key, readValue());
+			}
+		}
+
+		String[] readStrings() throws IOException {
+			int length = in.readInt();
+			if (length < 0) {
+				return null;
+			}
+			String[] values = new String[length];
+			for (int i = 0; i < length; i++) {
+				values[i] = readString();
+			}
+			return values;
+		}
+
+		String readString() throws IOException {
+			int index = in.readInt();
+			if (index == -1) {
+				return null;
+			} else if (index == -2) {
+				String value = in.readUTF();
+				strings.add(value);
+				return value;
+			}
+			return strings.get(index);
+		}
+	}
+
+	private static Logger log = Logger.getLogger(BeanDefinitionCache.class.getName());
+}
@@ -0,0 +1,102 @@
+package net.flicken.util.spring;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.PropertyResourceConfigurer;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Writes the post-processed bean definitions of a context to a {@link BeanDefinitionCache}.
+ *
+ * Definitions of {@code BeanFactoryPostProcessor}s are cached like all others, but marked
+ * as {@link BeanDefinitionCache#APPLIED_ATTRIBUTE applied}, since their effect is already part of
+ * the cached definitions, unless they are {@link BeanDefinitionCache.ReappliedPostProcessor}s.
+ * The writer must run after all other post-processors, so it must be the last post-processor
+ * defined in the context.  {@link CachingClassPathXmlApplicationContext} registers it automatically.
+ *
+ * A definition that cannot be cached is logged, and no cache is written.  Nor is one
+ * written if the context has a {@link PropertyResourceConfigurer}, such as a
+ * {@code PropertyPlaceholderConfigurer}, as the cache would keep values resolved
+ * from properties which may since have changed.
+ *
+ * @see BeanDefinitionCache
+ * @see CachingClassPathXmlApplicationContext
+ * @author broberts
+ */
+public class BeanDefinitionCacheWriter implements BeanFactoryPostProcessor {
+	private File cacheFile;
+	private Resource[] resources = new Resource[0];
+	private Resource[] importedResources = new Resource[0];
+
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+			throws BeansException {
+		Assert.state(cacheFile != null, "Must set cacheFile");
+		String[] configurers = beanFactory.getBeanNamesForType(PropertyResourceConfigurer.class, true, false);
+		if (configurers.length > 0) {
+			log.info("Not caching bean definitions, as values resolved by " + Arrays.asList(configurers) + " may change");
+			return;
+		}
+
+		Set<String> excluded = new HashSet<String>(Arrays.asList(beanFactory.getBeanNamesForType(BeanDefinitionCacheWriter.class, true, false)));
+		for (String name : beanFactory.getBeanNamesForType(BeanFactoryPostProcessor.class, true, false)) {
+			if (!excluded.contains(name) && beanFactory.containsBeanDefinition(name)
+					&& !beanFactory.isTypeMatch(name, BeanDefinitionCache.ReappliedPostProcessor.class)) {
+				beanFactory.getBeanDefinition(name).setAttribute(BeanDefinitionCache.APPLIED_ATTRIBUTE, Boolean.TRUE);
+			}
+		}
+		try {
+			new BeanDefinitionCache(cacheFile).write(beanFactory, resources, importedResources, excluded);
+			log.info("Wrote " + (beanFactory.getBeanDefinitionCount() - excluded.size()) + " bean definitions to cache " + cacheFile);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Cannot write bean definition cache " + cacheFile, e);
+		} catch (IllegalArgumentException e) {
+			log.warning("Not caching bean definitions: " + e.getMessage());
+		}
+	}
+
+	// Setter + getter methods
+	/**
+	 * File to which definitions are written
+	 */
+	public void setCacheFile(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	public File getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Resources from which the definitions were loaded, whose checksum keys the cache
+	 */
+	public void setResources(Resource[] resources) {
+		this.resources = resources;
+	}
+
+	public Resource[] getResources() {
+		return resources;
+	}
+
+	/**
+	 * Resources imported by {@code resources}, which are also part of the checksum
+	 */
+	public void setImportedResources(Resource[] importedResources) {
+		this.importedResources = importedResources;
+	}
+
+	public Resource[] getImportedResources() {
+		return importedResources;
+	}
+
+	private static Logger log = Logger.getLogger(BeanDefinitionCacheWriter.class.getName());
+}
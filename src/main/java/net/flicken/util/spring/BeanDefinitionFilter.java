@@ -0,0 +1,20 @@
+package net.flicken.util.spring;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+
+/**
+ * Filters beans based purely on their {@link BeanDefinition}, without instantiating
+ * beans or loading bean classes.
+ *
+ * @see BeanFilteringSupport#setBeanDefinitionFilters(BeanDefinitionFilter[])
+ * @see BeanDefinitionFilters
+ * @author broberts
+ */
+public interface BeanDefinitionFilter {
+	/**
+	 * @param beanName bean name
+	 * @param definition merged bean definition
+	 * @return whether the bean matches
+	 */
+	boolean matches(String beanName, BeanDefinition definition);
+}
@@ -0,0 +1,295 @@
+package net.flicken.util.spring;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.AutowireCandidateQualifier;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Common {@link BeanDefinitionFilter}s, which can be declared as inner beans:
+ * <code><pre>
+ *  &lt;bean class="net.flicken.util.spring.BeanRemover"&gt;
+ *		&lt;property name="beanDefinitionFilters"&gt;
+ *			&lt;list&gt;
+ *				&lt;bean class="net.flicken.util.spring.BeanDefinitionFilters$Scope"&gt;
+ *					&lt;constructor-arg value="prototype"/&gt;
+ *				&lt;/bean&gt;
+ *				&lt;bean class="net.flicken.util.spring.BeanDefinitionFilters$Annotation"&gt;
+ *					&lt;constructor-arg value="com.example.Experimental"/&gt;
+ *				&lt;/bean&gt;
+ *			&lt;/list&gt;
+ *		&lt;/property&gt;
+ *		...
+ *  &lt;/bean&gt;
+ * </pre></code>
+ *
+ * These filters are equal if they match the same definitions, so that queries filtering by
+ * equal filters can share cached results, see {@link BeanFilteringSupport}.
+ *
+ * @author broberts
+ */
+public abstract class BeanDefinitionFilters {
+
+	private BeanDefinitionFilters() {
+	}
+
+	/**
+	 * Matches definitions having the given attribute, optionally with the given value.
+	 */
+	public static class Attribute implements BeanDefinitionFilter {
+		private final String name;
+		private final Object value;
+
+		public Attribute(String name) {
+			this(name, null);
+		}
+
+		/**
+		 * @param name attribute name
+		 * @param value attribute value, or {@code null} to match any value
+		 */
+		public Attribute(String name, Object value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		public boolean matches(String beanName, BeanDefinition definition) {
+			if (!definition.hasAttribute(name)) {
+				return false;
+			}
+			return value == null || ObjectUtils.nullSafeEquals(value, definition.getAttribute(name))
+				|| (value instanceof String && value.equals(String.valueOf(definition.getAttribute(name))));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Attribute)) {
+				return false;
+			}
+			Attribute attribute = (Attribute) other;
+			return name.equals(attribute.name) && ObjectUtils.nullSafeEquals(value, attribute.value);
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode() * 29 + ObjectUtils.nullSafeHashCode(value);
+		}
+	}
+
+	/**
+	 * Matches definitions with the given scope, e.g. {@code singleton} or {@code prototype}.
+	 */
+	public static class Scope implements BeanDefinitionFilter {
+		private final String scope;
+
+		public Scope(String scope) {
+			this.scope = scope;
+		}
+
+		public boolean matches(String beanName, BeanDefinition definition) {
+			if (BeanDefinition.SCOPE_SINGLETON.equals(scope)) {
+				return definition.isSingleton();
+			}
+			return scope.equals(definition.getScope());
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Scope && scope.equals(((Scope) other).scope);
+		}
+
+		@Override
+		public int hashCode() {
+			return scope.hashCode();
+		}
+	}
+
+	/**
+	 * Matches abstract (or, if {@code false}, concrete) definitions.
+	 */
+	public static class Abstract implements BeanDefinitionFilter {
+		private final boolean isAbstract;
+
+		public Abstract(boolean isAbstract) {
+			this.isAbstract = isAbstract;
+		}
+
+		public boolean matches(String beanName, BeanDefinition definition) {
+			return definition.isAbstract() == isAbstract;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Abstract && isAbstract == ((Abstract) other).isAbstract;
+		}
+
+		@Override
+		public int hashCode() {
+			return isAbstract ? 1 : 0;
+		}
+	}
+
+	/**
+	 * Matches lazy-init (or, if {@code false}, eagerly initialized) definitions.
+	 */
+	public static class LazyInit implements BeanDefinitionFilter {
+		private final boolean lazyInit;
+
+		public LazyInit(boolean lazyInit) {
+			this.lazyInit = lazyInit;
+		}
+
+		public boolean matches(String beanName, BeanDefinition definition) {
+			return definition.isLazyInit() == lazyInit;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof LazyInit && lazyInit == ((LazyInit) other).lazyInit;
+		}
+
+		@Override
+		public int hashCode() {
+			return lazyInit ? 1 : 0;
+		}
+	}
+
+	/**
+	 * Matches definitions with a <code>&lt;qualifier&gt;</code> of the given type,
+	 * optionally with the given value.
+	 */
+	public static class QualifierValue implements BeanDefinitionFilter {
+		private final String type;
+		private final String value;
+
+		/**
+		 * Matches {@link Qualifier} with the given value.
+		 */
+		public QualifierValue(String value) {
+			this(Qualifier.class.getName(), value);
+		}
+
+		/**
+		 * @param type qualifier type name
+		 * @param value qualifier value, or {@code null} to match any value
+		 */
+		public QualifierValue(String type, String value) {
+			this.type = type;
+			this.value = value;
+		}
+
+		public boolean matches(String beanName, BeanDefinition definition) {
+			if (!(definition instanceof AbstractBeanDefinition)) {
+				return false;
+			}
+			AutowireCandidateQualifier qualifier = ((AbstractBeanDefinition) definition).getQualifier(type);
+			if (qualifier == null) {
+				return false;
+			}
+			return value == null || value.equals(qualifier.getAttribute(AutowireCandidateQualifier.VALUE_KEY));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof QualifierValue)) {
+				return false;
+			}
+			QualifierValue qualifierValue = (QualifierValue) other;
+			return type.equals(qualifierValue.type) && ObjectUtils.nullSafeEquals(value, qualifierValue.value);
+		}
+
+		@Override
+		public int hashCode() {
+			return type.hashCode() * 29 + ObjectUtils.nullSafeHashCode(value);
+		}
+	}
+
+	/**
+	 * Matches definitions whose bean class is annotated (directly or via a
+	 * meta-annotation) with the given annotation type.  The class file is read with
+	 * ASM, so the bean class itself is not loaded.  Definitions without a bean class
+	 * name, e.g. those using a factory bean, never match.
+	 */
+	public static class Annotation implements BeanDefinitionFilter {
+		private final String annotationType;
+		private final MetadataReaderFactory customMetadataReaderFactory;
+		private final MetadataReaderFactory metadataReaderFactory;
+
+		public Annotation(String annotationType) {
+			this(annotationType, null);
+		}
+
+		/**
+		 * @param annotationType annotation type name
+		 * @param metadataReaderFactory factory reading bean classes, or {@code null} for a default one
+		 */
+		public Annotation(String annotationType, MetadataReaderFactory metadataReaderFactory) {
+			this.annotationType = annotationType;
+			this.customMetadataReaderFactory = metadataReaderFactory;
+			this.metadataReaderFactory = metadataReaderFactory != null ? metadataReaderFactory : new CachingMetadataReaderFactory();
+		}
+
+		public boolean matches(String beanName, BeanDefinition definition) {
+			String className = definition.getBeanClassName();
+			if (className == null || definition.getFactoryMethodName() != null) {
+				return false;
+			}
+			try {
+				AnnotationMetadata metadata = metadataReaderFactory.getMetadataReader(className).getAnnotationMetadata();
+				return metadata.hasAnnotation(annotationType) || metadata.hasMetaAnnotation(annotationType);
+			} catch (IOException e) {
+				log.warning("Cannot read class metadata for bean '" + beanName + "' (" + className + "): " + e.getMessage());
+				return false;
+			}
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Annotation)) {
+				return false;
+			}
+			Annotation annotation = (Annotation) other;
+			return annotationType.equals(annotation.annotationType)
+				&& ObjectUtils.nullSafeEquals(customMetadataReaderFactory, annotation.customMetadataReaderFactory);
+		}
+
+		@Override
+		public int hashCode() {
+			return annotationType.hashCode();
+		}
+	}
+
+	/**
+	 * Negates another filter.
+	 */
+	public static class Not implements BeanDefinitionFilter {
+		private final BeanDefinitionFilter filter;
+
+		public Not(BeanDefinitionFilter filter) {
+			this.filter = filter;
+		}
+
+		public boolean matches(String beanName, BeanDefinition definition) {
+			return !filter.matches(beanName, definition);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Not && filter.equals(((Not) other).filter);
+		}
+
+		@Override
+		public int hashCode() {
+			return ~filter.hashCode();
+		}
+	}
+
+	private static Logger log = Logger.getLogger(BeanDefinitionFilters.class.getName());
+}
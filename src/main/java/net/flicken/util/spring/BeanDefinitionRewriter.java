@@ -0,0 +1,146 @@
+package net.flicken.util.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Applies a list of {@link BeanDefinitionRule}s in a single pass over the bean definitions,
+ * instead of one pass per post-processor.
+ *
+ * Rules whose patterns are all exact bean names are indexed by name, so that each
+ * definition is only checked against those rules and the rules with wildcard patterns.
+ * Rules are applied to each definition in the order given, and once a rule removes a
+ * definition, later rules are skipped.  Exact names without a definition are logged,
+ * not treated as errors.
+ * <code><pre>
+ *  &lt;bean class="net.flicken.util.spring.BeanDefinitionRewriter"&gt;
+ *		&lt;property name="rules"&gt;
+ *			&lt;list&gt;
+ *				&lt;bean class="net.flicken.util.spring.BeanDefinitionRule"&gt;
+ *					&lt;property name="beanPattern" value="*Report*"/&gt;
+ *					&lt;property name="lazyInit" value="true"/&gt;
+ *				&lt;/bean&gt;
+ *				&lt;bean class="net.flicken.util.spring.BeanDefinitionRule"&gt;
+ *					&lt;property name="beanPattern" value="debugConsole"/&gt;
+ *					&lt;property name="remove" value="true"/&gt;
+ *				&lt;/bean&gt;
+ *			&lt;/list&gt;
+ *		&lt;/property&gt;
+ *  &lt;/bean&gt;
+ * </pre></code>
+ *
+ * @see BeanDefinitionRule
+ * @author broberts
+ */
+public class BeanDefinitionRewriter implements BeanFactoryPostProcessor {
+	private List<BeanDefinitionRule> rules = Collections.emptyList();
+
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+			throws BeansException {
+		Map<String, List<Integer>> exactRules = new HashMap<String, List<Integer>>();
+		List<Integer> patternRules = new ArrayList<Integer>();
+		for (int i = 0; i < rules.size(); i++) {
+			String[] patterns = rules.get(i).getBeanPatterns();
+			if (!isExact(patterns)) {
+				patternRules.add(i);
+				continue;
+			}
+			for (String pattern : patterns) {
+				if (!beanFactory.containsBeanDefinition(pattern)) {
+					log.info("No bean definition '" + pattern + "' for rule " + i + ", skipping");
+					continue;
+				}
+				List<Integer> indexes = exactRules.get(pattern);
+				if (indexes == null) {
+					exactRules.put(pattern, indexes = new ArrayList<Integer>());
+				}
+				indexes.add(i);
+			}
+		}
+
+		int rewritten = 0;
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			candidates.clear();
+			candidates.addAll(patternRules);
+			List<Integer> exact = exactRules.get(name);
+			if (exact != null) {
+				candidates.addAll(exact);
+				Collections.sort(candidates);
+			}
+			if (candidates.isEmpty() || beanFactory.getMergedBeanDefinition(name).isAbstract()) {
+				continue;
+			}
+
+			Class<?> definitionClass = null;
+			boolean definitionClassResolved = false;
+			for (int index : candidates) {
+				BeanDefinitionRule rule = rules.get(index);
+				if (rule.requiresDefinitionClass() && !definitionClassResolved) {
+					definitionClass = resolveDefinitionClass(beanFactory, name);
+					definitionClassResolved = true;
+				}
+				if (rule.matches(beanFactory, name, definitionClass)) {
+					rewritten++;
+					if (!rule.apply(beanFactory, name)) {
+						break;
+					}
+				}
+			}
+		}
+		log.info("Applied " + rules.size() + " rules to " + rewritten + " bean definitions");
+	}
+
+	/**
+	 * Class declared by the merged definition of {@code name}, or {@code null} if it
+	 * uses a factory method or the class cannot be loaded.
+	 */
+	protected Class<?> resolveDefinitionClass(ConfigurableListableBeanFactory beanFactory, String name) {
+		BeanDefinition definition = beanFactory.getMergedBeanDefinition(name);
+		String className = definition.getBeanClassName();
+		if (className == null || definition.getFactoryMethodName() != null) {
+			return null;
+		}
+		try {
+			return ClassUtils.forName(className, beanFactory.getBeanClassLoader());
+		} catch (ClassNotFoundException e) {
+			log.fine("Cannot load class of bean '" + name + "': " + e);
+		} catch (LinkageError e) {
+			log.fine("Cannot load class of bean '" + name + "': " + e);
+		}
+		return null;
+	}
+
+	private static boolean isExact(String[] patterns) {
+		for (String pattern : patterns) {
+			if (pattern.indexOf('*') >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Setter + getter methods
+	/**
+	 * Rules to apply, in order
+	 */
+	public void setRules(List<BeanDefinitionRule> rules) {
+		this.rules = rules;
+	}
+
+	public List<BeanDefinitionRule> getRules() {
+		return rules;
+	}
+
+	private static Logger log = Logger.getLogger(BeanDefinitionRewriter.class.getName());
+}
@@ -0,0 +1,139 @@
+package net.flicken.util.spring;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+
+/**
+ * Rule of a {@link BeanDefinitionRewriter}, selecting definitions with the usual
+ * {@code beanPatterns}, {@code beanClass} and {@code beanDefinitionFilters}, and
+ * rewriting each selected definition with its actions: {@code remove}, {@code lazyInit},
+ * {@code scope} and {@code attributes}.
+ *
+ * Unlike other {@link BeanFilteringSupport}s, {@code beanClass} is matched against the
+ * class declared by the definition, so that no bean is created while post-processing.
+ * Definitions using a factory method never match a {@code beanClass}.
+ *
+ * As with {@link BeanRemover}, a rule is only applied {@code when} set, which defaults
+ * to {@code true}.
+ *
+ * @see BeanDefinitionRewriter
+ * @author broberts
+ */
+public class BeanDefinitionRule extends BeanFilteringSupport {
+	private boolean when = true;
+	private boolean remove = false;
+	private Boolean lazyInit;
+	private String scope;
+	private Map<String, Object> attributes = Collections.emptyMap();
+
+	/**
+	 * Whether the definition {@code name}, whose declared class is {@code definitionClass}, is selected.
+	 *
+	 * @param definitionClass declared class of the definition, or {@code null} if not known
+	 */
+	public boolean matches(ConfigurableListableBeanFactory beanFactory, String name, Class<?> definitionClass) {
+		if (!when || !matchesBeanPattern(name)) {
+			return false;
+		}
+		if (requiresDefinitionClass() && (definitionClass == null || !getBeanClass().isAssignableFrom(definitionClass))) {
+			return false;
+		}
+		return matchesBeanDefinition(beanFactory, name);
+	}
+
+	/**
+	 * Rewrites the definition {@code name}.
+	 *
+	 * @return whether the definition still exists
+	 */
+	public boolean apply(ConfigurableListableBeanFactory beanFactory, String name) {
+		if (remove) {
+			log.info("Removing matching bean definition '" + name + "'.");
+			((BeanDefinitionRegistry) beanFactory).removeBeanDefinition(name);
+			return false;
+		}
+
+		BeanDefinition definition = beanFactory.getBeanDefinition(name);
+		if (lazyInit != null) {
+			((AbstractBeanDefinition) definition).setLazyInit(lazyInit);
+		}
+		if (scope != null) {
+			definition.setScope(scope);
+		}
+		for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+			definition.setAttribute(attribute.getKey(), attribute.getValue());
+		}
+		return true;
+	}
+
+	/**
+	 * Whether matching needs the declared class of each definition.
+	 */
+	public boolean requiresDefinitionClass() {
+		return getBeanClass() != null && getBeanClass() != Object.class;
+	}
+
+	// Setter + getter methods
+	/**
+	 * Whether the rule is applied, defaults to {@code true}
+	 */
+	public void setWhen(boolean when) {
+		this.when = when;
+	}
+
+	public boolean isWhen() {
+		return when;
+	}
+
+	/**
+	 * Remove matching definitions
+	 */
+	public void setRemove(boolean remove) {
+		this.remove = remove;
+	}
+
+	public boolean isRemove() {
+		return remove;
+	}
+
+	/**
+	 * Set lazy-init of matching definitions, unless {@code null}
+	 */
+	public void setLazyInit(Boolean lazyInit) {
+		this.lazyInit = lazyInit;
+	}
+
+	public Boolean getLazyInit() {
+		return lazyInit;
+	}
+
+	/**
+	 * Set scope of matching definitions, unless {@code null}
+	 */
+	public void setScope(String scope) {
+		this.scope = scope;
+	}
+
+	public String getScope() {
+		return scope;
+	}
+
+	/**
+	 * Attributes set on matching definitions, e.g. {@code preserveTargetClass}
+	 */
+	public void setAttributes(Map<String, Object> attributes) {
+		this.attributes = attributes;
+	}
+
+	public Map<String, Object> getAttributes() {
+		return attributes;
+	}
+
+	private static Logger log = Logger.getLogger(BeanDefinitionRule.class.getName());
+}
@@ -1,11 +1,28 @@
 package net.flicken.util.spring;
 
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanCurrentlyInCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.HierarchicalBeanFactory;
 import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
 import org.springframework.util.PatternMatchUtils;
 
 /**
@@ -13,41 +30,357 @@ import org.springframework.util.PatternMatchUtils;
  * <ul>
  *   <li><code>beanClass</code> - Class of bean
  *   <li><code>beanPattern(s)</code> - Simple (glob) pattern(s), see {@link PatternMatchUtils} for details on syntax.
+ *   <li><code>beanDefinitionFilter(s)</code> - {@link BeanDefinitionFilter}(s) on bean definition metadata, see {@link BeanDefinitionFilters}.
  * </ul>
- * 
- * Can be extended or used as a composition object. 
- * 
+ *
+ * Bean names are filtered before any bean is instantiated, and bean definition filters are
+ * applied before any bean type is resolved.  If a {@link BeanTypeIndex}
+ * is present at {@link #setTypeIndex(Resource) typeIndex} and matches the bean factory,
+ * it is used to find beans by class instead of predicting the type of every bean definition.
+ *
+ * Matches from ancestor bean factories are cached per ancestor once its configuration
+ * is frozen, and shared by all of its children, so that many child contexts under one
+ * parent resolve the parent's beans once per query rather than once per child.  A parent
+ * which is refreshed gets a new bean factory, and so starts with no cached matches.
+ * Types are held weakly, so that classes of child contexts can be unloaded.  Queries with
+ * {@code beanDefinitionFilters} are only cached if every filter implements {@code equals()},
+ * as those of {@link BeanDefinitionFilters} do; otherwise each child would add its own entry.
+ *
+ * Can be extended or used as a composition object.
+ *
  * @author broberts
  */
 public class BeanFilteringSupport {
 
 	protected Class<?> beanClass;
 	protected String[] beanPatterns = new String[] { "*" };
+	protected BeanDefinitionFilter[] beanDefinitionFilters = new BeanDefinitionFilter[0];
+	protected Resource typeIndex = new ClassPathResource(BeanTypeIndex.DEFAULT_INDEX_LOCATION);
 
 	public BeanFilteringSupport() {
 	}
-	
-	@SuppressWarnings("unchecked")
+
 	public Map<String, ?> gatherQualifiedBeans(ListableBeanFactory beanFactory) {
-		
+		final Map<String,Object> beans = new LinkedHashMap<String, Object>();
+		doWithQualifiedBeans(beanFactory, new BeanCallback() {
+			public boolean doWith(String name, Object bean) {
+				beans.put(name, bean);
+				return true;
+			}
+		});
+		return beans;
+	}
+
+	/**
+	 * Invokes {@code callback} with each qualified bean in turn.  Each bean is only
+	 * instantiated when it is reached, and none after the callback returns {@code false}.
+	 *
+	 * @param beanFactory bean factory from which to get matching beans
+	 * @param callback callback invoked for each matching bean
+	 */
+	public void doWithQualifiedBeans(ListableBeanFactory beanFactory, BeanCallback callback) {
+		for (String name : gatherQualifiedBeanNames(beanFactory)) {
+			Object bean = getQualifiedBean(beanFactory, name);
+			if (bean != null && !callback.doWith(name, bean)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Names of all beans matching {@code beanClass} and {@code beanPatterns}, including
+	 * those of ancestor bean factories, without instantiating any of them.
+	 *
+	 * @param beanFactory bean factory from which to get matching bean names
+	 * @return matching bean names
+	 */
+	public String[] gatherQualifiedBeanNames(ListableBeanFactory beanFactory) {
 		Class<?> beanClass = getBeanClass();
 		if (beanClass == null)
 		{
 			beanClass = Object.class;
 		}
-		Map<String,Object> beans = BeanFactoryUtils.beansOfTypeIncludingAncestors(beanFactory, beanClass);
-		
-		Iterator<Entry<String, Object>> it = beans.entrySet().iterator();
-		while (it.hasNext())
-		{
-			Entry<String, ?> entry  = it.next();
-			if ((!matchesBeanPattern(entry.getKey())))
-			{
-				it.remove();
+
+		List<String> names = new ArrayList<String>();
+		if (beanDefinitionFilters.length > 0) {
+			// Narrow by definition metadata before any bean type is resolved
+			for (String name : beanNamesForDefinitionsIncludingAncestors(beanFactory)) {
+				if (beanClass == Object.class || beanFactory.isTypeMatch(name, beanClass)) {
+					names.add(name);
+				}
 			}
 		}
-		
-		return beans;
+		else {
+			for (String name : beanNamesForTypeIncludingAncestors(beanFactory, beanClass)) {
+				if (matchesBeanPattern(name)) {
+					names.add(name);
+				}
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Names of non-abstract bean definitions matching {@code beanPatterns} and {@code beanDefinitionFilters},
+	 * including those of ancestor bean factories, without resolving any bean types.
+	 */
+	protected List<String> beanNamesForDefinitionsIncludingAncestors(ListableBeanFactory beanFactory) {
+		List<String> names = new ArrayList<String>();
+		ConfigurableListableBeanFactory configurable = getConfigurableBeanFactory(beanFactory);
+		if (configurable != null) {
+			for (String name : configurable.getBeanDefinitionNames()) {
+				if (matchesBeanPattern(name) && !configurable.getMergedBeanDefinition(name).isAbstract()
+						&& matchesBeanDefinition(configurable, name)) {
+					names.add(name);
+				}
+			}
+		}
+		if (beanFactory instanceof HierarchicalBeanFactory) {
+			HierarchicalBeanFactory hierarchical = (HierarchicalBeanFactory) beanFactory;
+			BeanFactory parent = hierarchical.getParentBeanFactory();
+			if (parent instanceof ListableBeanFactory) {
+				for (String name : ancestorBeanNamesForDefinitions((ListableBeanFactory) parent)) {
+					if (!names.contains(name) && !hierarchical.containsLocalBean(name)) {
+						names.add(name);
+					}
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Whether the merged definition of {@code name} matches all {@link #setBeanDefinitionFilters(BeanDefinitionFilter[]) beanDefinitionFilters}.
+	 * Beans without a definition, such as manually registered singletons, only match if there are no filters.
+	 */
+	protected boolean matchesBeanDefinition(ConfigurableListableBeanFactory beanFactory, String name) {
+		if (beanDefinitionFilters.length == 0) {
+			return true;
+		}
+		if (!beanFactory.containsBeanDefinition(name)) {
+			return false;
+		}
+		BeanDefinition definition = beanFactory.getMergedBeanDefinition(name);
+		for (BeanDefinitionFilter filter : beanDefinitionFilters) {
+			if (!filter.matches(name, definition)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets bean, skipping beans which are currently in creation as
+	 * {@link ListableBeanFactory#getBeansOfType(Class)} does.
+	 *
+	 * @return bean, or {@code null} if it is currently in creation
+	 */
+	protected Object getQualifiedBean(ListableBeanFactory beanFactory, String name) {
+		try {
+			return beanFactory.getBean(name);
+		} catch (BeanCreationException e) {
+			if (e.getMostSpecificCause() instanceof BeanCurrentlyInCreationException) {
+				String inCreation = ((BeanCreationException) e.getMostSpecificCause()).getBeanName();
+				if (beanFactory instanceof ConfigurableBeanFactory
+						&& ((ConfigurableBeanFactory) beanFactory).isCurrentlyInCreation(inCreation)) {
+					log.fine("Ignoring match to currently created bean '" + name + "': " + e.getMessage());
+					return null;
+				}
+			}
+			throw e;
+		}
+	}
+
+	protected String[] beanNamesForTypeIncludingAncestors(ListableBeanFactory beanFactory, Class<?> type) {
+		String[] result = beanNamesForType(beanFactory, type);
+		if (beanFactory instanceof HierarchicalBeanFactory) {
+			HierarchicalBeanFactory hierarchical = (HierarchicalBeanFactory) beanFactory;
+			BeanFactory parent = hierarchical.getParentBeanFactory();
+			if (parent instanceof ListableBeanFactory) {
+				List<String> names = new ArrayList<String>(Arrays.asList(result));
+				for (String name : ancestorBeanNamesForType((ListableBeanFactory) parent, type)) {
+					if (!names.contains(name) && !hierarchical.containsLocalBean(name)) {
+						names.add(name);
+					}
+				}
+				result = names.toArray(new String[names.size()]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Bean names of the given type in {@code ancestor} and its own ancestors, shared
+	 * by all children of {@code ancestor} once its configuration is frozen.
+	 */
+	protected List<String> ancestorBeanNamesForType(ListableBeanFactory ancestor, Class<?> type) {
+		AncestorResults results = getAncestorResults(ancestor);
+		List<String> names = results == null ? null : results.byType.get(type);
+		if (names == null) {
+			names = Collections.unmodifiableList(Arrays.asList(beanNamesForTypeIncludingAncestors(ancestor, type)));
+			if (results != null) {
+				results.byType.put(type, names);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * As {@link #beanNamesForDefinitionsIncludingAncestors(ListableBeanFactory)} for {@code ancestor}, shared
+	 * by all children of {@code ancestor} filtering by equal patterns and equal definition filters.
+	 */
+	protected List<String> ancestorBeanNamesForDefinitions(ListableBeanFactory ancestor) {
+		AncestorResults results = hasComparableFilters() ? getAncestorResults(ancestor) : null;
+		List<Object> key = Arrays.<Object>asList(Arrays.asList(beanPatterns), Arrays.asList(beanDefinitionFilters));
+		List<String> names = results == null ? null : results.byDefinitions.get(key);
+		if (names == null) {
+			names = Collections.unmodifiableList(beanNamesForDefinitionsIncludingAncestors(ancestor));
+			if (results != null) {
+				results.byDefinitions.put(key, names);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Whether all {@code beanDefinitionFilters} implement {@code equals()}, so that equal
+	 * queries of other instances can be recognized.
+	 */
+	private boolean hasComparableFilters() {
+		for (BeanDefinitionFilter filter : beanDefinitionFilters) {
+			try {
+				if (filter.getClass().getMethod("equals", Object.class).getDeclaringClass() == Object.class) {
+					return false;
+				}
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Cached query results of {@code ancestor}, by query.
+	 *
+	 * @return results, or {@code null} if the configuration of {@code ancestor} or one of its
+	 *   own ancestors may still change
+	 */
+	private static AncestorResults getAncestorResults(ListableBeanFactory ancestor) {
+		ConfigurableListableBeanFactory configurable = getConfigurableBeanFactory(ancestor);
+		if (configurable == null) {
+			return null;
+		}
+		for (BeanFactory factory = ancestor; factory instanceof ListableBeanFactory; ) {
+			ConfigurableListableBeanFactory current = getConfigurableBeanFactory((ListableBeanFactory) factory);
+			if (current == null || !current.isConfigurationFrozen()) {
+				return null;
+			}
+			factory = current.getParentBeanFactory();
+		}
+
+		synchronized (ancestorResults) {
+			AncestorResults results = ancestorResults.get(configurable);
+			if (results == null) {
+				results = new AncestorResults();
+				ancestorResults.put(configurable, results);
+			}
+			return results;
+		}
+	}
+
+	/**
+	 * Local bean names of the given type, answered from the type index when possible.
+	 */
+	protected String[] beanNamesForType(ListableBeanFactory beanFactory, Class<?> type) {
+		BeanTypeIndex.Section section = getTypeIndexSection(beanFactory);
+		if (section == null) {
+			return beanFactory.getBeanNamesForType(type);
+		}
+
+		List<String> names = new ArrayList<String>(Arrays.asList(section.getBeanNamesForType(type)));
+		for (String name : section.getUnresolvedBeanNames()) {
+			if (beanFactory.isTypeMatch(name, type)) {
+				names.add(name);
+			}
+		}
+		// Manually registered singletons have no definition, so are never indexed
+		ConfigurableListableBeanFactory configurable = getConfigurableBeanFactory(beanFactory);
+		for (String name : configurable.getSingletonNames()) {
+			if (!configurable.containsBeanDefinition(name) && type.isInstance(configurable.getSingleton(name))) {
+				names.add(name);
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Type index section for the local bean definitions of {@code beanFactory}.
+	 *
+	 * @return section, or {@code null} if there is no index or it is stale
+	 */
+	protected BeanTypeIndex.Section getTypeIndexSection(ListableBeanFactory beanFactory) {
+		ConfigurableListableBeanFactory configurable = getConfigurableBeanFactory(beanFactory);
+		if (typeIndex == null || configurable == null) {
+			return null;
+		}
+		BeanTypeIndex index = loadTypeIndex(typeIndex);
+		if (index.isEmpty()) {
+			return null;
+		}
+
+		// Definitions cannot change once configuration is frozen, so the fingerprint only needs checking once
+		boolean frozen = configurable.isConfigurationFrozen();
+		if (frozen) {
+			synchronized (frozenSections) {
+				Map<BeanTypeIndex, BeanTypeIndex.Section> sections = frozenSections.get(configurable);
+				if (sections != null && sections.containsKey(index)) {
+					return sections.get(index);
+				}
+			}
+		}
+
+		BeanTypeIndex.Section section = index.getSection(configurable);
+		if (section == null) {
+			log.fine("Bean type index " + typeIndex + " is stale or does not include " + beanFactory + ", predicting bean types");
+		}
+		if (frozen) {
+			synchronized (frozenSections) {
+				Map<BeanTypeIndex, BeanTypeIndex.Section> sections = frozenSections.get(configurable);
+				if (sections == null) {
+					sections = new WeakHashMap<BeanTypeIndex, BeanTypeIndex.Section>();
+					frozenSections.put(configurable, sections);
+				}
+				sections.put(index, section);
+			}
+		}
+		return section;
+	}
+
+	protected static ConfigurableListableBeanFactory getConfigurableBeanFactory(ListableBeanFactory beanFactory) {
+		if (beanFactory instanceof ConfigurableListableBeanFactory) {
+			return (ConfigurableListableBeanFactory) beanFactory;
+		}
+		if (beanFactory instanceof ConfigurableApplicationContext) {
+			ConfigurableApplicationContext context = (ConfigurableApplicationContext) beanFactory;
+			if (context.isActive()) {
+				return context.getBeanFactory();
+			}
+		}
+		return null;
+	}
+
+	private static BeanTypeIndex loadTypeIndex(Resource resource) {
+		BeanTypeIndex index = typeIndexes.get(resource);
+		if (index == null) {
+			try {
+				index = BeanTypeIndex.load(resource);
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Cannot load bean type index from " + resource + ", predicting bean types", e);
+				index = new BeanTypeIndex();
+			}
+			typeIndexes.put(resource, index);
+		}
+		return index;
 	}
 
 	protected boolean matchesBeanPattern(String name) {
@@ -56,9 +389,9 @@ public class BeanFilteringSupport {
 
 	/**
 	 * (Optional) Name pattern that beans must match in order to be registered.
-	 * 
+	 *
 	 * Matches using Springs {@link PatternMatchUtils#simpleMatch(String[], String).
-	 * 
+	 *
 	 * @see PatternMatchUtils#simpleMatch(String[], String)
 	 * @param beanPatterns
 	 */
@@ -68,7 +401,7 @@ public class BeanFilteringSupport {
 
 	/**
 	 * Sets bean patterns to a single pattern.
-	 * 
+	 *
 	 * @param beanPattern
 	 * @see #setBeanPatterns(String[])
 	 */
@@ -79,7 +412,7 @@ public class BeanFilteringSupport {
 	/**
 	 * (Optional) Filter beans and method used on parameter object class.
 	 * Defaults to parameter type of found {@link #targetMethod}.
-	 *  
+	 *
 	 * @param clazz class which beans must be an instance of
 	 */
 	public void setBeanClass(Class<?> clazz) {
@@ -102,4 +435,82 @@ public class BeanFilteringSupport {
 		return beanPatterns;
 	}
 
+	/**
+	 * (Optional) Filters on bean definition metadata, all of which beans must match.
+	 * Evaluated before bean types are resolved, so beans without a definition never match.
+	 *
+	 * @param beanDefinitionFilters
+	 */
+	public void setBeanDefinitionFilters(BeanDefinitionFilter[] beanDefinitionFilters) {
+		this.beanDefinitionFilters = beanDefinitionFilters;
+	}
+
+	/**
+	 * Sets bean definition filters to a single filter.
+	 *
+	 * @param beanDefinitionFilter
+	 * @see #setBeanDefinitionFilters(BeanDefinitionFilter[])
+	 */
+	public void setBeanDefinitionFilter(BeanDefinitionFilter beanDefinitionFilter) {
+		setBeanDefinitionFilters(new BeanDefinitionFilter[] {beanDefinitionFilter});
+	}
+
+	/**
+	 * Bean definition filters
+	 * @return bean definition filters
+	 */
+	public BeanDefinitionFilter[] getBeanDefinitionFilters() {
+		return beanDefinitionFilters;
+	}
+
+	/**
+	 * (Optional) Location of {@link BeanTypeIndex} used to find beans by class.
+	 * Defaults to {@link BeanTypeIndex#DEFAULT_INDEX_LOCATION} on the classpath,
+	 * set to {@code null} to always predict bean types.
+	 *
+	 * @param typeIndex index location, which need not exist
+	 */
+	public void setTypeIndex(Resource typeIndex) {
+		this.typeIndex = typeIndex;
+	}
+
+	/**
+	 * Type index location
+	 * @return type index location
+	 */
+	public Resource getTypeIndex() {
+		return typeIndex;
+	}
+
+	// Inner classes
+	/**
+	 * Callback invoked for each qualified bean.
+	 *
+	 * @see BeanFilteringSupport#doWithQualifiedBeans(ListableBeanFactory, BeanCallback)
+	 */
+	public static interface BeanCallback {
+		/**
+		 * @param name bean name
+		 * @param bean bean instance
+		 * @return {@code true} to continue with the next bean, {@code false} to stop
+		 */
+		boolean doWith(String name, Object bean);
+	}
+
+	/**
+	 * Cached query results of one ancestor bean factory.
+	 */
+	private static class AncestorResults {
+		final Map<Class<?>, List<String>> byType
+			= Collections.synchronizedMap(new WeakHashMap<Class<?>, List<String>>());
+		final Map<Object, List<String>> byDefinitions = new ConcurrentHashMap<Object, List<String>>();
+	}
+
+	private static final Map<Resource, BeanTypeIndex> typeIndexes = new ConcurrentHashMap<Resource, BeanTypeIndex>();
+	private static final Map<ConfigurableListableBeanFactory, Map<BeanTypeIndex, BeanTypeIndex.Section>> frozenSections
+		= new WeakHashMap<ConfigurableListableBeanFactory, Map<BeanTypeIndex, BeanTypeIndex.Section>>();
+	private static final Map<ConfigurableListableBeanFactory, AncestorResults> ancestorResults
+		= new WeakHashMap<ConfigurableListableBeanFactory, AncestorResults>();
+
+	private static Logger log = Logger.getLogger(BeanFilteringSupport.class.getName());
 }
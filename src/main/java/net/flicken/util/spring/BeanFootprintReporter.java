@@ -0,0 +1,173 @@
+package net.flicken.util.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.util.Assert;
+
+/**
+ * Reports the memory footprint of the beans held by each {@link InstanceCollectingFactoryBean}
+ * and {@link RegisteringBeanPostProcessor} in a context, largest first, to show which
+ * beans are worth making lazy or removing.
+ *
+ * Sizes are measured with an {@link ObjectGraphSizer}, treating all other singletons
+ * and the context itself as boundaries, so that a bean's size does not include the
+ * services it references.  Only singletons are measured, so that reporting does not
+ * create any beans.
+ *
+ * Declare the reporter in the context to log a report on each refresh:
+ * <code><pre>
+ *  &lt;bean class="net.flicken.util.spring.BeanFootprintReporter"/&gt;
+ * </pre></code>
+ * For exact sizes, start the JVM with {@code -javaagent:spring-utils.jar}.
+ *
+ * @see ObjectGraphSizer
+ * @author broberts
+ */
+public class BeanFootprintReporter implements ApplicationListener {
+	private ObjectGraphSizer sizer = new ObjectGraphSizer();
+
+	public void onApplicationEvent(ApplicationEvent event) {
+		if (event instanceof ContextRefreshedEvent)
+		{
+			log.info(format(report(((ContextRefreshedEvent) event).getApplicationContext())));
+		}
+	}
+
+	/**
+	 * Measures the beans held by each collector and registrar in {@code context}.
+	 *
+	 * @return footprints of each collector's beans, by collector name, largest retained size first
+	 */
+	public Map<String, List<BeanFootprint>> report(ListableBeanFactory context) {
+		ConfigurableListableBeanFactory beanFactory = BeanFilteringSupport.getConfigurableBeanFactory(context);
+		Assert.notNull(beanFactory, "Cannot report footprint of an inactive context");
+
+		Map<String, String[]> namesByCollector = new LinkedHashMap<String, String[]>();
+		Map<String, Object> roots = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, BeanFilteringSupport> collector : findCollectors(beanFactory).entrySet()) {
+			List<String> names = new ArrayList<String>();
+			for (String name : collector.getValue().gatherQualifiedBeanNames(context)) {
+				if (beanFactory.containsSingleton(name)) {
+					names.add(name);
+					if (!roots.containsKey(name)) {
+						roots.put(name, beanFactory.getBean(name));
+					}
+				}
+			}
+			namesByCollector.put(collector.getKey(), names.toArray(new String[names.size()]));
+		}
+
+		List<Object> boundaries = new ArrayList<Object>();
+		boundaries.add(context);
+		boundaries.add(beanFactory);
+		for (String name : beanFactory.getSingletonNames()) {
+			boundaries.add(beanFactory.getSingleton(name));
+		}
+		Map<String, ObjectGraphSizer.Footprint> footprints = sizer.measure(roots, boundaries);
+
+		Map<String, List<BeanFootprint>> report = new LinkedHashMap<String, List<BeanFootprint>>();
+		for (Map.Entry<String, String[]> collector : namesByCollector.entrySet()) {
+			List<BeanFootprint> beans = new ArrayList<BeanFootprint>();
+			for (String name : collector.getValue()) {
+				beans.add(new BeanFootprint(name, footprints.get(name)));
+			}
+			Collections.sort(beans, LARGEST_FIRST);
+			report.put(collector.getKey(), beans);
+		}
+		return report;
+	}
+
+	/**
+	 * Formats a {@link #report(ListableBeanFactory) report} as a table.
+	 */
+	public String format(Map<String, List<BeanFootprint>> report) {
+		StringBuilder builder = new StringBuilder("Bean footprint report (")
+			.append(ObjectGraphSizer.isInstrumented() ? "instrumented" : "estimated").append(" bytes)");
+		for (Map.Entry<String, List<BeanFootprint>> collector : report.entrySet()) {
+			long total = 0;
+			for (BeanFootprint bean : collector.getValue()) {
+				total += bean.getFootprint().getRetainedSize();
+			}
+			builder.append(String.format("%n  %s: %d beans, %d retained", collector.getKey(), collector.getValue().size(), total));
+			for (BeanFootprint bean : collector.getValue()) {
+				ObjectGraphSizer.Footprint footprint = bean.getFootprint();
+				builder.append(String.format("%n    %-40s retained=%-10d reachable=%-10d shallow=%-6d objects=%d", bean.getName(),
+						footprint.getRetainedSize(), footprint.getReachableSize(), footprint.getShallowSize(), footprint.getObjectCount()));
+			}
+		}
+		return builder.toString();
+	}
+
+	protected Map<String, BeanFilteringSupport> findCollectors(ConfigurableListableBeanFactory beanFactory) {
+		Map<String, BeanFilteringSupport> collectors = new LinkedHashMap<String, BeanFilteringSupport>();
+		for (String name : beanFactory.getBeanNamesForType(InstanceCollectingFactoryBean.class, false, false)) {
+			String factoryName = BeanFactoryUtils.transformedBeanName(name);
+			collectors.put(factoryName, (BeanFilteringSupport) beanFactory.getBean(BeanFactory.FACTORY_BEAN_PREFIX + factoryName));
+		}
+		for (String name : beanFactory.getBeanNamesForType(RegisteringBeanPostProcessor.class, false, false)) {
+			collectors.put(name, (BeanFilteringSupport) beanFactory.getBean(name));
+		}
+		return collectors;
+	}
+
+	// Setter + getter methods
+	public void setSizer(ObjectGraphSizer sizer) {
+		this.sizer = sizer;
+	}
+
+	public ObjectGraphSizer getSizer() {
+		return sizer;
+	}
+
+	// Inner classes
+	/**
+	 * Footprint of a single bean.
+	 */
+	public static class BeanFootprint {
+		private final String name;
+		private final ObjectGraphSizer.Footprint footprint;
+
+		public BeanFootprint(String name, ObjectGraphSizer.Footprint footprint) {
+			this.name = name;
+			this.footprint = footprint;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public ObjectGraphSizer.Footprint getFootprint() {
+			return footprint;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + footprint;
+		}
+	}
+
+	private static final Comparator<BeanFootprint> LARGEST_FIRST = new Comparator<BeanFootprint>() {
+		public int compare(BeanFootprint a, BeanFootprint b) {
+			long difference = b.getFootprint().getRetainedSize() - a.getFootprint().getRetainedSize();
+			if (difference == 0) {
+				difference = b.getFootprint().getReachableSize() - a.getFootprint().getReachableSize();
+			}
+			return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+		}
+	};
+
+	private static Logger log = Logger.getLogger(BeanFootprintReporter.class.getName());
+}
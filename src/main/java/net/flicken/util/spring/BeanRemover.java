@@ -1,9 +1,16 @@
 package net.flicken.util.spring;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
@@ -26,11 +33,19 @@ import org.springframework.beans.factory.support.BeanDefinitionRegistry;
  * 
  * For more information about the {@link #setBeanPattern(String) bean patterns}, see {@link BeanFilteringSupport}.
  * 
+ * If {@code beanClass} is set, it is matched against the types predicted from the bean
+ * definitions, so that no bean, including no {@link org.springframework.beans.factory.FactoryBean FactoryBean},
+ * is created while post-processing.  The product types of factory beans not yet created, and of
+ * factory methods on such factory beans, cannot be predicted this way; such definitions are handled according to
+ * {@link #setUnpredictableTypePolicy(UnpredictableTypePolicy) unpredictableTypePolicy}, by default
+ * {@link UnpredictableTypePolicy#KEEP KEEP}.
+ * 
  * @see BeanFilteringSupport
  * @author broberts
  */
 public class BeanRemover extends BeanFilteringSupport implements BeanFactoryPostProcessor {
 	private boolean when = false;
+	private UnpredictableTypePolicy unpredictableTypePolicy = UnpredictableTypePolicy.KEEP;
 	
 	public void setWhen(boolean shouldInstantiate) {
 		this.when = shouldInstantiate;
@@ -47,7 +62,7 @@ public class BeanRemover extends BeanFilteringSupport implements BeanFactoryPost
 			if (beanFactory instanceof BeanDefinitionRegistry) {
 				BeanDefinitionRegistry beanReg = (BeanDefinitionRegistry) beanFactory;
 				for (String beanName : gatherBeanNames(beanFactory)) {
-					if (matchesBeanPattern(beanName)) {
+					if (matchesBeanPattern(beanName) && matchesBeanDefinition(beanFactory, beanName)) {
 						log.info("Removing matching bean definition '"+beanName+"'.");
 						beanReg.removeBeanDefinition(beanName);
 					}
@@ -57,15 +72,87 @@ public class BeanRemover extends BeanFilteringSupport implements BeanFactoryPost
 	}
 
 	/**
-	 * Filter on beanClass if set.
+	 * Local bean definition names, filtered on beanClass if set, without instantiating any bean.
 	 */
-	private String[] gatherBeanNames(ConfigurableListableBeanFactory beanFactory) {
+	protected List<String> gatherBeanNames(ConfigurableListableBeanFactory beanFactory) {
 		Class<?> beanClass = getBeanClass();
-		if (beanClass == null) {
-			return BeanFactoryUtils.beanNamesForTypeIncludingAncestors(beanFactory, beanClass);
-		} else {
-			return beanFactory.getBeanDefinitionNames();
+		List<String> names = new ArrayList<String>();
+		if (beanClass == null || beanClass == Object.class) {
+			names.addAll(Arrays.asList(beanFactory.getBeanDefinitionNames()));
+			return names;
+		}
+
+		Set<String> matched = new HashSet<String>();
+		for (String name : beanFactory.getBeanNamesForType(beanClass, true, false)) {
+			// Factory beans matching by their own class are returned dereferenced
+			matched.add(BeanFactoryUtils.transformedBeanName(name));
+		}
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			if (matched.contains(name)) {
+				names.add(name);
+			} else if (isTypeUnpredictable(beanFactory, name) && matchesBeanPattern(name)) {
+				switch (unpredictableTypePolicy) {
+				case REMOVE:
+					names.add(name);
+					break;
+				case RESOLVE:
+					if (beanFactory.isTypeMatch(name, beanClass)) {
+						names.add(name);
+					}
+					break;
+				case FAIL:
+					throw new BeanInitializationException("Cannot predict type of bean '" + name + "' to match against " + beanClass.getName());
+				default:
+					log.fine("Keeping bean '" + name + "', whose type cannot be predicted");
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Whether the type of {@code name} can only be known by creating a bean: a factory bean
+	 * which is not yet created, or a factory method on such a factory bean.  As in Spring,
+	 * factory methods on other beans are predicted from their declared return type.
+	 */
+	protected boolean isTypeUnpredictable(ConfigurableListableBeanFactory beanFactory, String name) {
+		BeanDefinition definition = beanFactory.getMergedBeanDefinition(name);
+		if (definition.isAbstract()) {
+			return false;
 		}
+		String factoryBeanName = definition.getFactoryBeanName();
+		if (factoryBeanName != null) {
+			return beanFactory.isFactoryBean(factoryBeanName) && !beanFactory.containsSingleton(factoryBeanName);
+		}
+		return beanFactory.isFactoryBean(name) && !beanFactory.containsSingleton(name);
+	}
+
+	// Setter + getter methods
+	/**
+	 * How definitions whose type cannot be predicted are treated when {@code beanClass} is set,
+	 * defaults to {@link UnpredictableTypePolicy#KEEP KEEP}
+	 */
+	public void setUnpredictableTypePolicy(UnpredictableTypePolicy unpredictableTypePolicy) {
+		this.unpredictableTypePolicy = unpredictableTypePolicy;
+	}
+
+	public UnpredictableTypePolicy getUnpredictableTypePolicy() {
+		return unpredictableTypePolicy;
+	}
+
+	// Inner classes
+	/**
+	 * Treatment of bean definitions whose type cannot be predicted without creating a bean.
+	 */
+	public static enum UnpredictableTypePolicy {
+		/** Keep the definition, as if its type did not match */
+		KEEP,
+		/** Remove the definition, as if its type matched, if it matches the bean patterns */
+		REMOVE,
+		/** Fail post-processing */
+		FAIL,
+		/** Create the bean to find its type, as before type prediction */
+		RESOLVE
 	}
 	
 	private static Logger log = Logger.getLogger(BeanRemover.class.getName());
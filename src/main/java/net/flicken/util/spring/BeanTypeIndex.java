@@ -0,0 +1,346 @@
+package net.flicken.util.spring;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.OrderComparator;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+
+/**
+ * Index of bean names by bean class, including all superclasses and interfaces,
+ * computed at build time so that {@link BeanFilteringSupport} can answer
+ * {@code beanClass} queries without predicting the type of every bean definition.
+ *
+ * An index file holds one section per context, keyed by a fingerprint of the
+ * context's bean definitions (names, classes, factory beans and methods).  At runtime
+ * the section matching the bean factory's fingerprint is used; if none matches
+ * the index is stale (or the context was not indexed) and callers fall back to
+ * type prediction.  Definitions whose type could not be determined at build time are
+ * recorded as unresolved and are always type-checked at runtime.
+ *
+ * Generated during the build, e.g. with the <code>exec-maven-plugin</code> in the
+ * <code>process-classes</code> phase:
+ * <code><pre>
+ *  java net.flicken.util.spring.BeanTypeIndex target/classes/META-INF/spring-utils/bean-types.properties \
+ *       com/example/context.xml com/example/other-context.xml
+ * </pre></code>
+ * Each argument after the output file is a comma separated list of classpath
+ * locations forming one context.  Bean factory post processors in the context are
+ * applied, as they would be on refresh, before indexing.
+ *
+ * Note that changing a class hierarchy without changing any bean definitions is
+ * not detected, so the index should be regenerated on every build.
+ *
+ * @see BeanFilteringSupport#setTypeIndex(Resource)
+ * @author broberts
+ */
+public class BeanTypeIndex {
+	public static final String DEFAULT_INDEX_LOCATION = "META-INF/spring-utils/bean-types.properties";
+
+	static final String UNRESOLVED_KEY = "unresolved";
+	static final String TYPE_KEY_PREFIX = "type.";
+	private static final String[] NO_NAMES = new String[0];
+
+	/** Sections by bean factory fingerprint */
+	private final Map<String, Section> sections = new HashMap<String, Section>();
+
+	public BeanTypeIndex() {
+	}
+
+	/**
+	 * Finds index section matching the local bean definitions of {@code beanFactory}.
+	 *
+	 * @return index section, or {@code null} if the bean factory is not indexed or the index is stale
+	 */
+	public Section getSection(ListableBeanFactory beanFactory) {
+		if (sections.isEmpty()) {
+			return null;
+		}
+		return sections.get(fingerprint(beanFactory));
+	}
+
+	/**
+	 * Whether the index contains any sections.
+	 */
+	public boolean isEmpty() {
+		return sections.isEmpty();
+	}
+
+	/**
+	 * Indexes all local bean definitions of the given bean factory, replacing any existing section for it.
+	 */
+	public void add(ConfigurableListableBeanFactory beanFactory) {
+		Section section = new Section();
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			if (beanFactory.getBeanDefinition(name).isAbstract()) {
+				continue;
+			}
+			Class<?> type = predictType(beanFactory, name);
+			if (type == null) {
+				section.unresolved.add(name);
+				continue;
+			}
+			section.addAll(type, name);
+			if (beanFactory.isFactoryBean(name)) {
+				String factoryName = BeanFactory.FACTORY_BEAN_PREFIX + name;
+				section.addAll(beanFactory.getType(factoryName), factoryName);
+			}
+		}
+		sections.put(fingerprint(beanFactory), section);
+	}
+
+	private Class<?> predictType(ConfigurableListableBeanFactory beanFactory, String name) {
+		try {
+			return beanFactory.getType(name);
+		} catch (RuntimeException e) {
+			log.warning("Cannot determine type of bean '" + name + "', leaving unresolved: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Loads index from {@code resource}, returning an empty index if the resource does not exist.
+	 */
+	public static BeanTypeIndex load(Resource resource) throws IOException {
+		BeanTypeIndex index = new BeanTypeIndex();
+		if (!resource.exists()) {
+			return index;
+		}
+
+		Properties properties = new Properties();
+		InputStream in = resource.getInputStream();
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+
+		for (Entry<Object, Object> entry : properties.entrySet()) {
+			String key = (String) entry.getKey();
+			int separator = key.indexOf('.');
+			if (separator < 0) {
+				continue;
+			}
+			String fingerprint = key.substring(0, separator);
+			Section section = index.sections.get(fingerprint);
+			if (section == null) {
+				section = new Section();
+				index.sections.put(fingerprint, section);
+			}
+			section.load(key.substring(separator + 1), (String) entry.getValue());
+		}
+		return index;
+	}
+
+	/**
+	 * Writes index in the format read by {@link #load(Resource)}.
+	 */
+	public void write(OutputStream out) throws IOException {
+		Properties properties = new Properties();
+		for (Entry<String, Section> entry : sections.entrySet()) {
+			entry.getValue().store(entry.getKey() + ".", properties);
+		}
+		properties.store(out, "Bean type index, generated by " + BeanTypeIndex.class.getName());
+	}
+
+	/**
+	 * Fingerprint of the local bean definitions of {@code beanFactory}, which only
+	 * reads definition metadata and never resolves bean types.
+	 */
+	public static String fingerprint(ListableBeanFactory beanFactory) {
+		if (beanFactory instanceof ConfigurableApplicationContext) {
+			beanFactory = ((ConfigurableApplicationContext) beanFactory).getBeanFactory();
+		}
+		String[] names = beanFactory.getBeanDefinitionNames();
+		StringBuilder builder = new StringBuilder();
+		for (String name : names) {
+			builder.append(name);
+			if (beanFactory instanceof ConfigurableListableBeanFactory) {
+				BeanDefinition definition = ((ConfigurableListableBeanFactory) beanFactory).getBeanDefinition(name);
+				builder.append('|').append(definition.getBeanClassName())
+					.append('|').append(definition.getParentName())
+					.append('|').append(definition.getFactoryBeanName())
+					.append('|').append(definition.getFactoryMethodName())
+					.append('|').append(definition.isAbstract());
+			}
+			builder.append('\n');
+		}
+		return md5(builder.toString());
+	}
+
+	private static String md5(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 not available", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 not available", e);
+		}
+	}
+
+	/**
+	 * Generates an index file.
+	 *
+	 * @param args output file, followed by one comma separated list of classpath context locations per context
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: " + BeanTypeIndex.class.getName() + " <output file> <context locations>...");
+			System.exit(1);
+		}
+
+		File output = new File(args[0]);
+		BeanTypeIndex index = load(new FileSystemResource(output));
+		for (int i = 1; i < args.length; i++) {
+			index.add(loadBeanDefinitions(StringUtils.commaDelimitedListToStringArray(args[i])));
+		}
+
+		if (output.getParentFile() != null) {
+			output.getParentFile().mkdirs();
+		}
+		OutputStream out = new FileOutputStream(output);
+		try {
+			index.write(out);
+		} finally {
+			out.close();
+		}
+		log.info("Wrote bean type index for " + (args.length - 1) + " context(s) to " + output);
+	}
+
+	/**
+	 * Loads bean definitions and applies bean factory post processors, without
+	 * instantiating any other beans.
+	 */
+	@SuppressWarnings("unchecked")
+	protected static ConfigurableListableBeanFactory loadBeanDefinitions(String[] locations) {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(beanFactory);
+		for (String location : locations) {
+			reader.loadBeanDefinitions(new ClassPathResource(location.trim()));
+		}
+
+		List<BeanFactoryPostProcessor> postProcessors = new ArrayList<BeanFactoryPostProcessor>();
+		for (String name : beanFactory.getBeanNamesForType(BeanFactoryPostProcessor.class, true, false)) {
+			postProcessors.add((BeanFactoryPostProcessor) beanFactory.getBean(name));
+		}
+		Collections.sort(postProcessors, new OrderComparator());
+		for (BeanFactoryPostProcessor postProcessor : postProcessors) {
+			postProcessor.postProcessBeanFactory(beanFactory);
+		}
+		return beanFactory;
+	}
+
+	// Inner classes
+	/**
+	 * Index of one bean factory's local bean definitions.
+	 */
+	public static class Section {
+		private final Map<String, Set<String>> namesByType = new LinkedHashMap<String, Set<String>>();
+		private final Set<String> unresolved = new LinkedHashSet<String>();
+
+		/**
+		 * Names of beans which are instances of {@code type}, in definition order.
+		 * As with {@link ListableBeanFactory#getBeanNamesForType(Class)}, a factory bean
+		 * is only returned by its <code>&amp;</code>-prefixed name if its product does not match.
+		 */
+		public String[] getBeanNamesForType(Class<?> type) {
+			Set<String> names = namesByType.get(type.getName());
+			if (names == null) {
+				return NO_NAMES;
+			}
+			List<String> result = new ArrayList<String>(names.size());
+			for (String name : names) {
+				if (!name.startsWith(BeanFactory.FACTORY_BEAN_PREFIX)
+						|| !names.contains(name.substring(BeanFactory.FACTORY_BEAN_PREFIX.length()))) {
+					result.add(name);
+				}
+			}
+			return result.toArray(new String[result.size()]);
+		}
+
+		/**
+		 * Names of beans whose type was not known at build time.
+		 */
+		public String[] getUnresolvedBeanNames() {
+			return unresolved.toArray(new String[unresolved.size()]);
+		}
+
+		void addAll(Class<?> type, String name) {
+			Set<Class<?>> visited = new HashSet<Class<?>>();
+			for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+				add(clazz, name, visited);
+			}
+		}
+
+		private void add(Class<?> clazz, String name, Set<Class<?>> visited) {
+			if (!visited.add(clazz)) {
+				return;
+			}
+			Set<String> names = namesByType.get(clazz.getName());
+			if (names == null) {
+				names = new LinkedHashSet<String>();
+				namesByType.put(clazz.getName(), names);
+			}
+			names.add(name);
+			for (Class<?> iface : clazz.getInterfaces()) {
+				add(iface, name, visited);
+			}
+		}
+
+		void load(String key, String value) {
+			List<String> names = Arrays.asList(StringUtils.commaDelimitedListToStringArray(value));
+			if (UNRESOLVED_KEY.equals(key)) {
+				unresolved.addAll(names);
+			}
+			else if (key.startsWith(TYPE_KEY_PREFIX)) {
+				namesByType.put(key.substring(TYPE_KEY_PREFIX.length()), new LinkedHashSet<String>(names));
+			}
+		}
+
+		void store(String prefix, Properties properties) {
+			if (!unresolved.isEmpty()) {
+				properties.put(prefix + UNRESOLVED_KEY, StringUtils.collectionToCommaDelimitedString(unresolved));
+			}
+			for (Entry<String, Set<String>> entry : namesByType.entrySet()) {
+				properties.put(prefix + TYPE_KEY_PREFIX + entry.getKey(), StringUtils.collectionToCommaDelimitedString(entry.getValue()));
+			}
+		}
+	}
+
+	private static Logger log = Logger.getLogger(BeanTypeIndex.class.getName());
+}
@@ -0,0 +1,226 @@
+package net.flicken.util.spring;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.AopConfigException;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.util.Assert;
+
+/**
+ * Records which singleton beans are called during a run, and writes the counts as a
+ * usage profile when the context is closed.  The profile is then read on the next start
+ * by {@link LazyInitUnusedBeans}, which marks beans that were never called lazy-init.
+ *
+ * Matching singletons are wrapped in counting proxies, so recording is meant for measuring
+ * runs and should be limited with {@code beanPatterns}, {@code beanClass} and
+ * {@code beanDefinitionFilters}.  Classes are proxied with CGLib, so that injection by class
+ * still works; beans which cannot be proxied are logged and left out of the profile.
+ * <code><pre>
+ *	&lt;bean class="net.flicken.util.spring.BeanUsageRecorder"&gt;
+ *	  &lt;property name="beanPattern" value="*Service"/&gt;
+ *	  &lt;property name="profile" value="/var/tmp/usage.properties"/&gt;
+ *	&lt;/bean&gt;
+ * </pre></code>
+ *
+ * The profile is a properties file of bean names and call counts.  {@link Object} methods
+ * and container callbacks, such as {@link ApplicationListener#onApplicationEvent(ApplicationEvent)},
+ * are not counted as calls.
+ *
+ * @see LazyInitUnusedBeans
+ * @author broberts
+ */
+public class BeanUsageRecorder extends BeanFilteringSupport
+implements
+BeanPostProcessor,
+BeanFactoryAware,
+ApplicationListener
+{
+	private static final List<Class<?>> CONTAINER_CALLBACKS = Arrays.<Class<?>>asList(
+			ApplicationListener.class, DisposableBean.class, Lifecycle.class);
+
+	private File profile;
+	private boolean proxyTargetClass = true;
+
+	private ConfigurableListableBeanFactory beanFactory;
+	private final ConcurrentMap<String, AtomicLong> usage = new ConcurrentHashMap<String, AtomicLong>();
+
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+		return bean;
+	}
+
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (!isRecorded(bean, beanName)) {
+			return bean;
+		}
+
+		AtomicLong calls = new AtomicLong();
+		ProxyFactory proxyFactory = new ProxyFactory(bean);
+		proxyFactory.setProxyTargetClass(proxyTargetClass);
+		proxyFactory.addAdvice(new CountingInterceptor(calls));
+		Object proxy;
+		try {
+			proxy = proxyFactory.getProxy(bean.getClass().getClassLoader());
+		} catch (AopConfigException e) {
+			log.log(Level.INFO, "Cannot record usage of bean '" + beanName + "'", e);
+			return bean;
+		}
+		usage.putIfAbsent(beanName, calls);
+		return proxy;
+	}
+
+	/**
+	 * Whether usage of {@code bean} is recorded: matching singletons, other than
+	 * post-processors and factory beans.
+	 */
+	protected boolean isRecorded(Object bean, String beanName) {
+		if (bean instanceof BeanPostProcessor || bean instanceof BeanFactoryPostProcessor
+				|| bean instanceof FactoryBean || beanFactory == null) {
+			return false;
+		}
+		if (!matchesBeanPattern(beanName) || (getBeanClass() != null && !getBeanClass().isInstance(bean))) {
+			return false;
+		}
+		return beanFactory.containsBeanDefinition(beanName)
+				&& beanFactory.getMergedBeanDefinition(beanName).isSingleton()
+				&& matchesBeanDefinition(beanFactory, beanName);
+	}
+
+	public void onApplicationEvent(ApplicationEvent event) {
+		if (event instanceof ContextClosedEvent && profile != null) {
+			try {
+				writeProfile(profile);
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Cannot write bean usage profile to " + profile, e);
+			}
+		}
+	}
+
+	/**
+	 * Writes the call counts of recorded beans as a properties file.
+	 */
+	public void writeProfile(File file) throws IOException {
+		Properties properties = new Properties();
+		for (Map.Entry<String, Long> entry : getUsage().entrySet()) {
+			properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "Bean usage profile, written by " + getClass().getName());
+		} finally {
+			out.close();
+		}
+		log.info("Wrote usage of " + properties.size() + " beans to " + file);
+	}
+
+	/**
+	 * Call counts of recorded beans so far, sorted by bean name.
+	 */
+	public Map<String, Long> getUsage() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : usage.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+		Assert.isInstanceOf(ConfigurableListableBeanFactory.class, beanFactory);
+		this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+	}
+
+	// Setter + getter methods
+	/**
+	 * File to which the profile is written when the context is closed
+	 */
+	public void setProfile(File profile) {
+		this.profile = profile;
+	}
+
+	public File getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Whether to proxy the bean class with CGLib, rather than its interfaces, defaults to {@code true}
+	 */
+	public void setProxyTargetClass(boolean proxyTargetClass) {
+		this.proxyTargetClass = proxyTargetClass;
+	}
+
+	public boolean isProxyTargetClass() {
+		return proxyTargetClass;
+	}
+
+	// Inner classes
+	/**
+	 * Counts calls to a recorded bean.
+	 */
+	private static class CountingInterceptor implements MethodInterceptor {
+		private final AtomicLong calls;
+
+		CountingInterceptor(AtomicLong calls) {
+			this.calls = calls;
+		}
+
+		public Object invoke(MethodInvocation invocation) throws Throwable {
+			if (isCounted(invocation.getMethod())) {
+				calls.incrementAndGet();
+			}
+			return invocation.proceed();
+		}
+
+		private static boolean isCounted(Method method) {
+			if (method.getDeclaringClass() == Object.class || AopUtils.isToStringMethod(method)
+					|| AopUtils.isEqualsMethod(method) || AopUtils.isHashCodeMethod(method)) {
+				return false;
+			}
+			for (Class<?> callback : CONTAINER_CALLBACKS) {
+				if (callback.isAssignableFrom(method.getDeclaringClass()) && isDeclaredBy(callback, method)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isDeclaredBy(Class<?> type, Method method) {
+			try {
+				type.getMethod(method.getName(), method.getParameterTypes());
+				return true;
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+	}
+
+	private static Logger log = Logger.getLogger(BeanUsageRecorder.class.getName());
+}
@@ -0,0 +1,344 @@
+package net.flicken.util.spring;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Warms up beans after the context is refreshed, so that hot code is JIT-compiled
+ * before the first requests arrive.
+ *
+ * Each matching bean's no-argument {@code methodName} (or the given {@link WarmUpWorkload})
+ * is called repeatedly, in parallel across beans, for {@code iterations} calls or
+ * {@code duration} milliseconds, whichever ends first.  The warm-up time of each bean
+ * is logged and available from {@link #getWarmUpTimes()}.  Only once all beans are warm
+ * is {@link #isReady()} {@code true} and a {@link WarmUpCompletedEvent} published.
+ *
+ * Warm-up starts when this bean's own context is refreshed, not child contexts, and
+ * runs on a background thread so that it does not hold up the refresh, unless
+ * {@link #setSynchronous(boolean) synchronous}.  Use {@link #awaitReady(long)} to wait for it.
+ *
+ * Warming up is only an optimization, so failures never stop the context: a bean whose
+ * warm-up fails, or which cannot be created, is logged as a warning and warm-up otherwise
+ * completes as usual, with {@link #isReady()} {@code true} and a {@link WarmUpCompletedEvent}
+ * holding the times of the beans which were warmed up.
+ *
+ * As with {@link RegisteringBeanPostProcessor}, the bean pattern and method name can be
+ * given by the bean name, in the form {@code beanPattern.method}:
+ * <code><pre>
+ *	&lt;bean name="*Cache.warmUp" class="net.flicken.util.spring.BeanWarmer"&gt;
+ *	  &lt;property name="duration" value="5000"/&gt;
+ *	&lt;/bean&gt;
+ * </pre></code>
+ * Alternatively, set {@code beanClass}, {@code beanPatterns}, {@code methodName} or
+ * {@code workload} directly.
+ *
+ * @see RegisteringBeanPostProcessor#BEAN_METHOD_SUFFIX_PATTERN_STRING
+ * @author broberts
+ */
+public class BeanWarmer extends BeanFilteringSupport
+implements
+InitializingBean,
+ApplicationListener,
+ApplicationEventPublisherAware,
+ApplicationContextAware,
+BeanNameAware
+{
+	private String methodName;
+	private WarmUpWorkload workload;
+	private int iterations = 1000;
+	private long duration = 0;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean synchronous = false;
+
+	private String beanName;
+	private ApplicationEventPublisher eventPublisher;
+	private ApplicationContext applicationContext;
+	private volatile boolean ready = false;
+	private final Object readyMonitor = new Object();
+	private final Map<String, Long> warmUpTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+	public void afterPropertiesSet() throws Exception {
+		if (methodName == null && workload == null) {
+			determinePatternAndMethodFromBeanName();
+		}
+		Assert.state(methodName != null || workload != null, "Must set methodName or workload");
+		Assert.state(iterations > 0 || duration > 0, "Must set positive iterations or duration");
+	}
+
+	public void onApplicationEvent(ApplicationEvent event) {
+		if (!(event instanceof ContextRefreshedEvent)) {
+			return;
+		}
+		final ApplicationContext context = ((ContextRefreshedEvent) event).getApplicationContext();
+		if (applicationContext != null && context != applicationContext) {
+			// Refresh of a child context
+			return;
+		}
+
+		Runnable warmUp = new Runnable() {
+			public void run() {
+				try {
+					warmUp(context);
+				} catch (RuntimeException e) {
+					log.log(Level.WARNING, "Warm-up failed", e);
+				}
+				if (eventPublisher != null) {
+					eventPublisher.publishEvent(new WarmUpCompletedEvent(BeanWarmer.this, getWarmUpTimes()));
+				}
+			}
+		};
+		if (synchronous) {
+			warmUp.run();
+		} else {
+			Thread thread = new Thread(warmUp, "bean-warmer-" + beanName);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Waits up to {@code timeout} milliseconds for all beans to be warm.
+	 *
+	 * @return whether all beans are warm
+	 */
+	public boolean awaitReady(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (readyMonitor) {
+			long remaining = timeout;
+			while (!ready && remaining > 0) {
+				readyMonitor.wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return ready;
+		}
+	}
+
+	/**
+	 * Warms up all matching beans in {@code beanFactory}, returning once all are warm.
+	 * Readiness is signalled even if this fails.
+	 *
+	 * @param beanFactory bean context from which to get matching beans
+	 */
+	public void warmUp(ListableBeanFactory beanFactory) {
+		ready = false;
+		warmUpTimes.clear();
+		long start = System.currentTimeMillis();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final ExecutorService pool = executor;
+			doWithQualifiedBeans(beanFactory, new BeanCallback() {
+				public boolean doWith(final String name, final Object bean) {
+					pool.execute(new Runnable() {
+						public void run() {
+							warmUpBean(name, bean);
+						}
+					});
+					return true;
+				}
+			});
+			executor.shutdown();
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				log.fine("Waiting for warm-up to finish");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during warm-up", e);
+		} finally {
+			executor.shutdownNow();
+			synchronized (readyMonitor) {
+				ready = true;
+				readyMonitor.notifyAll();
+			}
+		}
+		log.info("Warmed up " + warmUpTimes.size() + " beans in " + (System.currentTimeMillis() - start) + "ms: " + warmUpTimes);
+	}
+
+	protected void warmUpBean(String name, Object bean) {
+		Method method = null;
+		if (workload == null) {
+			method = ReflectionUtils.findMethod(bean.getClass(), methodName, new Class<?>[0]);
+			if (method == null) {
+				log.warning("Cannot warm up bean '" + name + "', no method " + methodName + "()");
+				return;
+			}
+			ReflectionUtils.makeAccessible(method);
+		}
+
+		long start = System.nanoTime();
+		long deadline = duration > 0 ? start + TimeUnit.MILLISECONDS.toNanos(duration) : Long.MAX_VALUE;
+		int count = 0;
+		try {
+			while ((iterations <= 0 || count < iterations) && (duration <= 0 || System.nanoTime() - deadline < 0)) {
+				if (method != null) {
+					ReflectionUtils.invokeMethod(method, bean);
+				} else {
+					workload.warmUp(name, bean);
+				}
+				count++;
+			}
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Warm-up of bean '" + name + "' failed after " + count + " iterations", e);
+		}
+
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		warmUpTimes.put(name, elapsed);
+		log.info("Warmed up bean '" + name + "' with " + count + " iterations in " + elapsed + "ms");
+	}
+
+	protected void determinePatternAndMethodFromBeanName() {
+		Assert.notNull(beanName, "Must set methodName, workload, or bean name of form 'beanPattern.method'");
+		Matcher matcher = RegisteringBeanPostProcessor.BEAN_METHOD_SUFFIX_PATTERN.matcher(beanName);
+		Assert.state(matcher.matches(), "Cannot split method from bean pattern, use form 'beanPattern.method'");
+
+		setMethodName(matcher.group(2));
+		setBeanPattern(matcher.group(1));
+	}
+
+	// Setter + getter methods
+	/**
+	 * Whether all beans have been warmed up.
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Warm-up time of each bean in milliseconds, in order of completion.
+	 */
+	public Map<String, Long> getWarmUpTimes() {
+		synchronized (warmUpTimes) {
+			return new LinkedHashMap<String, Long>(warmUpTimes);
+		}
+	}
+
+	/**
+	 * No-argument method called on each bean
+	 */
+	public void setMethodName(String methodName) {
+		this.methodName = methodName;
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * Workload called with each bean, instead of {@code methodName}.
+	 */
+	public void setWorkload(WarmUpWorkload workload) {
+		this.workload = workload;
+	}
+
+	public WarmUpWorkload getWorkload() {
+		return workload;
+	}
+
+	/**
+	 * Calls per bean, or 0 for no limit.  Defaults to 1000.
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Milliseconds to warm up each bean, or 0 for no limit.  Defaults to 0.
+	 */
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Number of beans warmed up concurrently, defaults to the number of processors.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Whether warm-up runs within the refresh of the context, holding it up, rather than
+	 * on a background thread.  Defaults to {@code false}.
+	 */
+	public void setSynchronous(boolean synchronous) {
+		this.synchronous = synchronous;
+	}
+
+	public boolean isSynchronous() {
+		return synchronous;
+	}
+
+	public void setApplicationContext(ApplicationContext applicationContext) {
+		this.applicationContext = applicationContext;
+	}
+
+	public void setBeanName(String beanName) {
+		this.beanName = beanName;
+	}
+
+	public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+		this.eventPublisher = eventPublisher;
+	}
+
+	// Inner classes
+	/**
+	 * Synthetic warm-up workload, called repeatedly for each bean.
+	 */
+	public static interface WarmUpWorkload {
+		void warmUp(String name, Object bean) throws Exception;
+	}
+
+	/**
+	 * Published once all beans of a {@link BeanWarmer} are warm.
+	 */
+	public static class WarmUpCompletedEvent extends ApplicationEvent {
+		private static final long serialVersionUID = 1L;
+		private final Map<String, Long> warmUpTimes;
+
+		public WarmUpCompletedEvent(BeanWarmer source, Map<String, Long> warmUpTimes) {
+			super(source);
+			this.warmUpTimes = warmUpTimes;
+		}
+
+		/**
+		 * Warm-up time of each bean in milliseconds.
+		 */
+		public Map<String, Long> getWarmUpTimes() {
+			return warmUpTimes;
+		}
+	}
+
+	private static Logger log = Logger.getLogger(BeanWarmer.class.getName());
+}
@@ -0,0 +1,148 @@
+package net.flicken.util.spring;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.parsing.EmptyReaderEventListener;
+import org.springframework.beans.factory.parsing.ImportDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.OrderComparator;
+import org.springframework.core.io.Resource;
+
+/**
+ * {@link ClassPathXmlApplicationContext} which loads its bean definitions from a
+ * {@link BeanDefinitionCache}, if the cache is up to date for the context's
+ * configuration files.  Otherwise the XML is parsed as usual, and the post-processed
+ * definitions are written to the cache by a {@link BeanDefinitionCacheWriter}.
+ *
+ * When loaded from the cache, neither the XML nor the {@code BeanFactoryPostProcessor}s,
+ * e.g. {@link BeanRemover}, are processed again, so only cache contexts whose
+ * post-processing gives the same result on every start.  Post-processors are still
+ * defined, so those with roles at runtime, e.g. {@link RegistrationCoordinator}, still
+ * work, and {@link BeanDefinitionCache.ReappliedPostProcessor}s, e.g.
+ * {@link ParallelInitializationConfigurer}, are invoked again, in order.  Delete the
+ * cache file to force the XML to be reloaded.
+ *
+ * @see BeanDefinitionCache
+ * @author broberts
+ */
+public class CachingClassPathXmlApplicationContext extends ClassPathXmlApplicationContext {
+	public static final String WRITER_BEAN_NAME = BeanDefinitionCacheWriter.class.getName();
+
+	private final BeanDefinitionCache cache;
+	private final List<Resource> importedResources = new ArrayList<Resource>();
+	private boolean loadedFromCache;
+
+	public CachingClassPathXmlApplicationContext(File cacheFile, String... configLocations) throws BeansException {
+		this(cacheFile, configLocations, null);
+	}
+
+	public CachingClassPathXmlApplicationContext(File cacheFile, String[] configLocations, ApplicationContext parent) throws BeansException {
+		super(configLocations, false, parent);
+		this.cache = new BeanDefinitionCache(cacheFile);
+		refresh();
+	}
+
+	@Override
+	protected void loadBeanDefinitions(DefaultListableBeanFactory beanFactory) throws IOException {
+		Resource[] resources = getSourceResources();
+		loadedFromCache = cache.read(beanFactory, resources);
+		if (loadedFromCache) {
+			log.info("Loaded " + beanFactory.getBeanDefinitionCount() + " bean definitions from cache " + cache.getFile());
+			return;
+		}
+
+		importedResources.clear();
+		super.loadBeanDefinitions(beanFactory);
+
+		RootBeanDefinition writer = new RootBeanDefinition(BeanDefinitionCacheWriter.class);
+		writer.setRole(BeanDefinition.ROLE_INFRASTRUCTURE);
+		MutablePropertyValues properties = writer.getPropertyValues();
+		properties.addPropertyValue("cacheFile", cache.getFile());
+		properties.addPropertyValue("resources", resources);
+		properties.addPropertyValue("importedResources", importedResources.toArray(new Resource[importedResources.size()]));
+		beanFactory.registerBeanDefinition(WRITER_BEAN_NAME, writer);
+	}
+
+	/**
+	 * When loaded from the cache, invokes only the post-processors not already applied
+	 * to the cached definitions.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void invokeBeanFactoryPostProcessors(ConfigurableListableBeanFactory beanFactory) {
+		if (!loadedFromCache) {
+			super.invokeBeanFactoryPostProcessors(beanFactory);
+			return;
+		}
+
+		List<BeanFactoryPostProcessor> postProcessors = new ArrayList<BeanFactoryPostProcessor>(getBeanFactoryPostProcessors());
+		List<BeanFactoryPostProcessor> reapplied = new ArrayList<BeanFactoryPostProcessor>();
+		for (String name : beanFactory.getBeanNamesForType(BeanFactoryPostProcessor.class, true, false)) {
+			if (!beanFactory.containsBeanDefinition(name) || !BeanDefinitionCache.isApplied(beanFactory.getBeanDefinition(name))) {
+				reapplied.add((BeanFactoryPostProcessor) beanFactory.getBean(name));
+			}
+		}
+		Collections.sort(reapplied, new OrderComparator());
+		postProcessors.addAll(reapplied);
+		for (BeanFactoryPostProcessor postProcessor : postProcessors) {
+			postProcessor.postProcessBeanFactory(beanFactory);
+		}
+	}
+
+	@Override
+	protected void initBeanDefinitionReader(XmlBeanDefinitionReader beanDefinitionReader) {
+		super.initBeanDefinitionReader(beanDefinitionReader);
+		beanDefinitionReader.setEventListener(new EmptyReaderEventListener() {
+			@Override
+			public void importProcessed(ImportDefinition importDefinition) {
+				if (importDefinition.getActualResources() != null) {
+					importedResources.addAll(Arrays.asList(importDefinition.getActualResources()));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Configuration resources of this context, whose checksum keys the cache.
+	 */
+	protected Resource[] getSourceResources() throws IOException {
+		List<Resource> resources = new ArrayList<Resource>();
+		if (getConfigResources() != null) {
+			resources.addAll(Arrays.asList(getConfigResources()));
+		}
+		if (getConfigLocations() != null) {
+			for (String location : getConfigLocations()) {
+				resources.addAll(Arrays.asList(getResources(location)));
+			}
+		}
+		return resources.toArray(new Resource[resources.size()]);
+	}
+
+	/**
+	 * Whether the bean definitions were last loaded from the cache, rather than parsed.
+	 */
+	public boolean isLoadedFromCache() {
+		return loadedFromCache;
+	}
+
+	public BeanDefinitionCache getCache() {
+		return cache;
+	}
+
+	private static Logger log = Logger.getLogger(CachingClassPathXmlApplicationContext.class.getName());
+}
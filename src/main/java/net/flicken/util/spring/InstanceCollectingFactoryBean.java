@@ -1,12 +1,42 @@
 package net.flicken.util.spring;
 
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.target.EmptyTargetSource;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.util.Assert;
@@ -31,43 +61,215 @@ import org.springframework.util.ClassUtils;
  *   <li>Any array class
  * </ul>
  * 
+ * For plugins looked up by type, use {@link TypeIndexedCollection}, which caches
+ * the beans matching each requested type.
+ * 
+ * When the collected beans are prototypes and the collection is requested often, set
+ * {@code pooled} so that instances are reused instead of created on every call.  The
+ * collection is then a {@link LeasedList}, whose prototype instances are leased from
+ * bounded per-bean pools, and returned to them by {@link LeasedList#release()}.  Pooled
+ * instances are shared between callers in turn, so must not keep per-call state.
+ * 
+ * To find slow plugins, set {@code timed}, so that each collected bean is wrapped in a
+ * proxy recording the latency of its methods in a {@link LatencyRecorder}.  The recorder
+ * is registered with the {@code mbeanServer}, by default the platform MBean server, as
+ * {@code net.flicken.util.spring:type=LatencyRecorder,name=}<i>bean name</i>.  Beans are
+ * proxied by {@code beanClass} if it is an interface, and with CGLib otherwise.
+ * 
+ * When the collection is only ever looped over to call the same method on each bean,
+ * set {@code composite} to get a single proxy of the {@code beanClass} interface instead.
+ * Each call to the proxy is made on every collected bean, in collection order, or in
+ * parallel on the {@code executor} if set, with the last bean called on the calling thread.
+ * The results are combined by the {@code resultAggregator}, by default
+ * {@link ResultAggregators.ByReturnType}, and the first exception thrown by a bean is
+ * thrown by the proxy.  As with collections, the beans are collected when the proxy is
+ * created; composites, including itself, are not collected.
+ * 
  * @author broberts
  */
 public class InstanceCollectingFactoryBean extends BeanFilteringSupport 
-		implements FactoryBean, ApplicationContextAware {
+		implements FactoryBean, ApplicationContextAware, BeanNameAware, InitializingBean, DisposableBean {
+	public static final String OBJECT_NAME_PREFIX = "net.flicken.util.spring:type=LatencyRecorder,name=";
+
 	private Class<?> collectionType;
 	private ApplicationContext context;
+	private boolean pooled = false;
+	private int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+	private final ConcurrentMap<String, BeanPool> pools = new ConcurrentHashMap<String, BeanPool>();
+	private boolean timed = false;
+	private LatencyRecorder latencyRecorder;
+	private MBeanServer mbeanServer;
+	private ObjectName objectName;
+	private String beanName;
+	private final ConcurrentMap<String, Object> timedSingletons = new ConcurrentHashMap<String, Object>();
+	private boolean composite = false;
+	private Executor executor;
+	private ResultAggregator resultAggregator = new ResultAggregators.ByReturnType();
 	
 	public InstanceCollectingFactoryBean()
 	{
 		collectionType = ArrayList.class;
 	}
+
+	public void afterPropertiesSet() {
+		if (isComposite()) {
+			Assert.state(getBeanClass() != null && getBeanClass().isInterface(), "Composite requires beanClass to be an interface, got: " + getBeanClass());
+			Assert.state(!isPooled(), "Composite cannot be pooled");
+		}
+		if (!isTimed()) {
+			return;
+		}
+		if (latencyRecorder == null) {
+			latencyRecorder = new LatencyRecorder();
+		}
+		if (mbeanServer == null) {
+			mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		}
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(String.valueOf(beanName)));
+			mbeanServer.registerMBean(latencyRecorder, name);
+			objectName = name;
+		} catch (JMException e) {
+			log.log(Level.WARNING, "Cannot register latencies of '" + beanName + "' with MBean server", e);
+		}
+	}
+
+	public void destroy() throws JMException {
+		if (objectName != null) {
+			mbeanServer.unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
 	
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Object getObject() {
-		Map<String, ?> beanMap = gatherQualifiedBeans(context);
-
-		Object beans = createCollection(beanMap.size());
-		if (beans instanceof Map)
+		if (isPooled())
 		{
-			((Map)beans).putAll(beanMap);
+			return leaseBeans();
 		}
-		else if (beans instanceof Collection)
+		if (isComposite())
 		{
-			((Collection)beans).addAll(beanMap.values());
-			
+			return createComposite(collectComponents());
 		}
-		else if (beans.getClass().isArray())
+		if (getCollectionType().isArray())
 		{
-	      System.arraycopy(beanMap.values().toArray(), 0,
-	                       beans, 0,
-	                       beanMap.size());
+			// Size is not known up front, so collect into a list first
+			final List<Object> beanList = new ArrayList<Object>();
+			doWithQualifiedBeans(context, new BeanCallback() {
+				public boolean doWith(String name, Object bean) {
+					beanList.add(collected(name, bean));
+					return true;
+				}
+			});
+			Object beans = createCollection(beanList.size());
+			System.arraycopy(beanList.toArray(), 0, beans, 0, beanList.size());
+			return beans;
+		}
+
+		final Object beans = createCollection(0);
+		doWithQualifiedBeans(context, new BeanCallback() {
+			public boolean doWith(String name, Object bean) {
+				if (beans instanceof Map)
+				{
+					((Map)beans).put(name, collected(name, bean));
+				}
+				else
+				{
+					((Collection)beans).add(collected(name, bean));
+				}
+				return true;
+			}
+		});
+		return beans;
+	}
+
+	/**
+	 * Collects matching beans, leasing prototypes from their pools.
+	 */
+	protected LeasedList leaseBeans() {
+		Assert.state(getCollectionType().isAssignableFrom(LeasedList.class), "Pooled collection is a List, not assignable to " + getCollectionType());
+		LeasedList beans = new LeasedList();
+		for (String name : gatherQualifiedBeanNames(context)) {
+			if (context.isPrototype(name)) {
+				BeanPool pool = getPool(name);
+				Object bean = pool.poll();
+				// Pooled instances are already timed
+				beans.lease(bean != null ? bean : collected(name, context.getBean(name)), pool);
+			} else {
+				Object bean = getQualifiedBean(context, name);
+				if (bean != null) {
+					beans.add(collected(name, bean));
+				}
+			}
+		}
+		return beans;
+	}
+
+	/**
+	 * Collects matching beans for a composite, other than composites themselves, which
+	 * would otherwise collect each other.
+	 */
+	protected List<Object> collectComponents() {
+		List<Object> beans = new ArrayList<Object>();
+		for (String name : gatherQualifiedBeanNames(context)) {
+			String factoryName = BeanFactory.FACTORY_BEAN_PREFIX + name;
+			if (context.isTypeMatch(factoryName, InstanceCollectingFactoryBean.class)
+					&& ((InstanceCollectingFactoryBean) context.getBean(factoryName)).isComposite()) {
+				continue;
+			}
+			Object bean = getQualifiedBean(context, name);
+			if (bean != null) {
+				beans.add(collected(name, bean));
+			}
 		}
-	
-		
 		return beans;
 	}
 
+	/**
+	 * Proxy of {@code beanClass} calling each of {@code beans} in turn.
+	 */
+	protected Object createComposite(List<Object> beans) {
+		ProxyFactory proxyFactory = new ProxyFactory();
+		proxyFactory.setTargetSource(EmptyTargetSource.forClass(getBeanClass()));
+		proxyFactory.setInterfaces(new Class<?>[] { getBeanClass() });
+		proxyFactory.addAdvice(new CompositeInterceptor(beans, executor, resultAggregator));
+		return proxyFactory.getProxy(getBeanClass().getClassLoader());
+	}
+
+	/**
+	 * Collected bean, wrapped in a timing proxy if {@code timed}.  Proxies of singletons are reused.
+	 */
+	protected Object collected(String name, Object bean) {
+		if (!isTimed()) {
+			return bean;
+		}
+		if (!context.isSingleton(name)) {
+			return createTimedProxy(name, bean);
+		}
+		Object proxy = timedSingletons.get(name);
+		if (proxy == null) {
+			timedSingletons.putIfAbsent(name, createTimedProxy(name, bean));
+			proxy = timedSingletons.get(name);
+		}
+		return proxy;
+	}
+
+	protected Object createTimedProxy(String name, Object bean) {
+		ProxyFactory proxyFactory = new ProxyFactory(bean);
+		proxyFactory.setProxyTargetClass(getBeanClass() == null || !getBeanClass().isInterface());
+		proxyFactory.addAdvice(latencyRecorder.getInterceptor(name));
+		return proxyFactory.getProxy(bean.getClass().getClassLoader());
+	}
+
+	protected BeanPool getPool(String name) {
+		BeanPool pool = pools.get(name);
+		if (pool == null) {
+			pools.putIfAbsent(name, new BeanPool(poolSize));
+			pool = pools.get(name);
+		}
+		return pool;
+	}
+
 	protected Object createCollection(int size) throws IllegalStateException {
 		try {
 			if (getCollectionType().isArray())
@@ -96,6 +298,9 @@ public class InstanceCollectingFactoryBean extends BeanFilteringSupport
 	}
 	
 	public Class<?> getObjectType() {
+		if (isComposite()) {
+			return getBeanClass();
+		}
 		return getCollectionType();
 	}
 
@@ -111,4 +316,242 @@ public class InstanceCollectingFactoryBean extends BeanFilteringSupport
 			throws BeansException {
 		this.context = context;
 	}
+
+	/**
+	 * Whether prototype instances are pooled, and the collection returned is a {@link LeasedList}.
+	 */
+	public void setPooled(boolean pooled) {
+		this.pooled = pooled;
+	}
+
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Maximum idle instances kept per prototype bean, defaults to twice the number of processors.
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * Whether collected beans are wrapped in proxies recording their latencies.
+	 */
+	public void setTimed(boolean timed) {
+		this.timed = timed;
+	}
+
+	public boolean isTimed() {
+		return timed;
+	}
+
+	/**
+	 * Recorder of latencies when {@code timed}, by default one per factory.
+	 */
+	public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+	}
+
+	public LatencyRecorder getLatencyRecorder() {
+		return latencyRecorder;
+	}
+
+	/**
+	 * MBean server with which the latency recorder is registered, by default the platform MBean server.
+	 */
+	public void setMbeanServer(MBeanServer mbeanServer) {
+		this.mbeanServer = mbeanServer;
+	}
+
+	/**
+	 * Whether to return a single proxy of {@code beanClass} calling every collected bean.
+	 */
+	public void setComposite(boolean composite) {
+		this.composite = composite;
+	}
+
+	public boolean isComposite() {
+		return composite;
+	}
+
+	/**
+	 * Executor on which a composite calls beans in parallel, by default none, calling them in sequence.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Combines the results of a composite, defaults to {@link ResultAggregators.ByReturnType}.
+	 */
+	public void setResultAggregator(ResultAggregator resultAggregator) {
+		this.resultAggregator = resultAggregator;
+	}
+
+	public ResultAggregator getResultAggregator() {
+		return resultAggregator;
+	}
+
+	public void setBeanName(String beanName) {
+		this.beanName = beanName;
+	}
+
+	// Inner classes
+	/**
+	 * Collected beans whose prototype instances are leased from pools.  Call
+	 * {@link #release()} once done with the beans, to return them for reuse.
+	 */
+	public static class LeasedList extends ArrayList<Object> {
+		private static final long serialVersionUID = 1L;
+		private final List<Object> leased = new ArrayList<Object>();
+		private final List<BeanPool> leasedFrom = new ArrayList<BeanPool>();
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		void lease(Object bean, BeanPool pool) {
+			add(bean);
+			leased.add(bean);
+			leasedFrom.add(pool);
+		}
+
+		/**
+		 * Returns leased instances to their pools.  Further calls have no effect.
+		 */
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				for (int i = 0; i < leased.size(); i++) {
+					leasedFrom.get(i).offer(leased.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls each bean with the method called on a composite, and aggregates their results.
+	 */
+	public static class CompositeInterceptor implements MethodInterceptor {
+		private final List<Object> beans;
+		private final Executor executor;
+		private final ResultAggregator resultAggregator;
+
+		public CompositeInterceptor(List<Object> beans, Executor executor, ResultAggregator resultAggregator) {
+			this.beans = beans;
+			this.executor = executor;
+			this.resultAggregator = resultAggregator;
+		}
+
+		public Object invoke(MethodInvocation invocation) throws Throwable {
+			Method method = invocation.getMethod();
+			if (AopUtils.isToStringMethod(method)) {
+				return "Composite of " + beans;
+			}
+			Object[] arguments = invocation.getArguments();
+			List<Object> results = new ArrayList<Object>(beans.size());
+			if (executor == null || beans.size() < 2) {
+				for (Object bean : beans) {
+					results.add(AopUtils.invokeJoinpointUsingReflection(bean, method, arguments));
+				}
+			} else {
+				invokeInParallel(method, arguments, results);
+			}
+			return resultAggregator.aggregate(method, results);
+		}
+
+		private void invokeInParallel(Method method, Object[] arguments, List<Object> results) throws Throwable {
+			int last = beans.size() - 1;
+			List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(last);
+			try {
+				for (int i = 0; i < last; i++) {
+					FutureTask<Object> task = new FutureTask<Object>(new Invocation(beans.get(i), method, arguments));
+					tasks.add(task);
+					try {
+						executor.execute(task);
+					} catch (RejectedExecutionException e) {
+						task.run();
+					}
+				}
+				Object lastResult = AopUtils.invokeJoinpointUsingReflection(beans.get(last), method, arguments);
+				for (FutureTask<Object> task : tasks) {
+					results.add(task.get());
+				}
+				results.add(lastResult);
+			} catch (ExecutionException e) {
+				throw e.getCause();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw e;
+			} finally {
+				for (FutureTask<Object> task : tasks) {
+					task.cancel(true);
+				}
+			}
+		}
+	}
+
+	private static class Invocation implements Callable<Object> {
+		private final Object bean;
+		private final Method method;
+		private final Object[] arguments;
+
+		Invocation(Object bean, Method method, Object[] arguments) {
+			this.bean = bean;
+			this.method = method;
+			this.arguments = arguments;
+		}
+
+		public Object call() throws Exception {
+			try {
+				return AopUtils.invokeJoinpointUsingReflection(bean, method, arguments);
+			} catch (Exception e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		}
+	}
+
+	/**
+	 * Lock-free pool of idle instances of one bean, holding at most {@code maxIdle}.
+	 */
+	protected static class BeanPool {
+		private final Queue<Object> idle = new ConcurrentLinkedQueue<Object>();
+		private final AtomicInteger idleCount = new AtomicInteger();
+		private final int maxIdle;
+
+		public BeanPool(int maxIdle) {
+			this.maxIdle = maxIdle;
+		}
+
+		public Object poll() {
+			Object bean = idle.poll();
+			if (bean != null) {
+				idleCount.decrementAndGet();
+			}
+			return bean;
+		}
+
+		public void offer(Object bean) {
+			if (idleCount.incrementAndGet() <= maxIdle) {
+				idle.offer(bean);
+			} else {
+				idleCount.decrementAndGet();
+			}
+		}
+
+		public int getIdleCount() {
+			return idleCount.get();
+		}
+	}
+
+	private static Logger log = Logger.getLogger(InstanceCollectingFactoryBean.class.getName());
 }
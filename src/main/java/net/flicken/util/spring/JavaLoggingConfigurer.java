@@ -28,6 +28,8 @@ import org.springframework.util.Assert;
  * </pre></code>
  * 
  * @see #setResources(Resource[])
+ * @see RateLimitingHandler
+ * @see MappedFileHandler
  * @author broberts
  */
 public class JavaLoggingConfigurer implements InitializingBean {
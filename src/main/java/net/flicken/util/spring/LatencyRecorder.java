@@ -0,0 +1,114 @@
+package net.flicken.util.spring;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Records the latency of each method of each bean into a {@link LatencyHistogram}, using
+ * the {@link #getInterceptor(String) interceptor} of the bean, and exposes the histograms
+ * as an MBean.
+ *
+ * Used by {@link InstanceCollectingFactoryBean} when {@code timed}, so that a slow plugin
+ * in a chain can be found from JMX.  Methods of the same name are recorded together.
+ *
+ * @author broberts
+ */
+public class LatencyRecorder implements LatencyRecorderMBean {
+	private final ConcurrentMap<String, TimingInterceptor> interceptors = new ConcurrentHashMap<String, TimingInterceptor>();
+
+	/**
+	 * Interceptor recording latencies of {@code beanName}, shared by all its instances.
+	 */
+	public MethodInterceptor getInterceptor(String beanName) {
+		TimingInterceptor interceptor = interceptors.get(beanName);
+		if (interceptor == null) {
+			interceptors.putIfAbsent(beanName, new TimingInterceptor());
+			interceptor = interceptors.get(beanName);
+		}
+		return interceptor;
+	}
+
+	/**
+	 * Histograms by bean name, then method name, sorted by name.
+	 */
+	public Map<String, Map<String, LatencyHistogram>> getHistograms() {
+		Map<String, Map<String, LatencyHistogram>> result = new TreeMap<String, Map<String, LatencyHistogram>>();
+		for (Map.Entry<String, TimingInterceptor> entry : interceptors.entrySet()) {
+			result.put(entry.getKey(), new TreeMap<String, LatencyHistogram>(entry.getValue().histograms));
+		}
+		return result;
+	}
+
+	/**
+	 * Histogram of {@code methodName} of {@code beanName}, or {@code null} if never called.
+	 */
+	public LatencyHistogram getHistogram(String beanName, String methodName) {
+		TimingInterceptor interceptor = interceptors.get(beanName);
+		return interceptor == null ? null : interceptor.histograms.get(methodName);
+	}
+
+	public String[] getSummary() {
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, Map<String, LatencyHistogram>> bean : getHistograms().entrySet()) {
+			for (Map.Entry<String, LatencyHistogram> method : bean.getValue().entrySet()) {
+				lines.add(bean.getKey() + "." + method.getKey() + " " + method.getValue());
+			}
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	public long getCount(String beanName, String methodName) {
+		LatencyHistogram histogram = getHistogram(beanName, methodName);
+		return histogram == null ? 0 : histogram.getCount();
+	}
+
+	public long getPercentile(String beanName, String methodName, double percentile) {
+		LatencyHistogram histogram = getHistogram(beanName, methodName);
+		return histogram == null ? 0 : TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(percentile));
+	}
+
+	public void reset() {
+		for (TimingInterceptor interceptor : interceptors.values()) {
+			for (LatencyHistogram histogram : interceptor.histograms.values()) {
+				histogram.reset();
+			}
+		}
+	}
+
+	// Inner classes
+	/**
+	 * Times each call, including those that throw.
+	 */
+	private static class TimingInterceptor implements MethodInterceptor {
+		private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+		private final ConcurrentMap<Method, LatencyHistogram> byMethod = new ConcurrentHashMap<Method, LatencyHistogram>();
+
+		public Object invoke(MethodInvocation invocation) throws Throwable {
+			long start = System.nanoTime();
+			try {
+				return invocation.proceed();
+			} finally {
+				histogramOf(invocation.getMethod()).record(System.nanoTime() - start);
+			}
+		}
+
+		private LatencyHistogram histogramOf(Method method) {
+			LatencyHistogram histogram = byMethod.get(method);
+			if (histogram == null) {
+				histograms.putIfAbsent(method.getName(), new LatencyHistogram());
+				histogram = histograms.get(method.getName());
+				byMethod.put(method, histogram);
+			}
+			return histogram;
+		}
+	}
+}
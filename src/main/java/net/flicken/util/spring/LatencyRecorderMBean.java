@@ -0,0 +1,19 @@
+package net.flicken.util.spring;
+
+/**
+ * Management interface of {@link LatencyRecorder}.  Latencies are in microseconds.
+ *
+ * @author broberts
+ */
+public interface LatencyRecorderMBean {
+	/**
+	 * One line per bean and method, of the form {@code bean.method count=... mean=... p50=...}.
+	 */
+	String[] getSummary();
+
+	long getCount(String beanName, String methodName);
+
+	long getPercentile(String beanName, String methodName, double percentile);
+
+	void reset();
+}
@@ -0,0 +1,146 @@
+package net.flicken.util.spring;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.Lifecycle;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Marks singleton beans that were never called in a usage profile, written by
+ * {@link BeanUsageRecorder}, as lazy-init, so that they are only created if they are used.
+ *
+ * As with {@link BeanRemover}, only beans matching {@code beanPatterns}, {@code beanClass}
+ * and {@code beanDefinitionFilters} are changed.  Beans which are not in the profile are
+ * left as they are, as is everything if the profile does not exist.
+ *
+ * Container callbacks are not counted as calls, so beans which the container itself calls are
+ * never made lazy: {@link Lifecycle} beans, {@link ApplicationListener}s, beans with an init
+ * method or {@link InitializingBean}, and beans whose class is not known before they are created
+ * (factory methods and {@link FactoryBean}s).  A server or scheduler which is only started by
+ * the container would otherwise never be created.
+ * <code><pre>
+ *	&lt;bean class="net.flicken.util.spring.LazyInitUnusedBeans"&gt;
+ *	  &lt;property name="beanPattern" value="*Service"/&gt;
+ *	  &lt;property name="profile" value="file:/var/tmp/usage.properties"/&gt;
+ *	&lt;/bean&gt;
+ * </pre></code>
+ *
+ * @see BeanUsageRecorder
+ * @author broberts
+ */
+public class LazyInitUnusedBeans extends BeanFilteringSupport implements BeanFactoryPostProcessor {
+	private static final Class<?>[] CONTAINER_CALLBACK_TYPES = {
+			Lifecycle.class, ApplicationListener.class, InitializingBean.class, FactoryBean.class };
+
+	private Resource profile;
+
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+			throws BeansException {
+		if (profile == null || !profile.exists()) {
+			log.info("No bean usage profile at " + profile + ", not changing lazy-init");
+			return;
+		}
+		Properties usage;
+		try {
+			usage = PropertiesLoaderUtils.loadProperties(profile);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Cannot read bean usage profile from " + profile + ", not changing lazy-init", e);
+			return;
+		}
+
+		Set<String> typeMatches = null;
+		if (getBeanClass() != null) {
+			typeMatches = new HashSet<String>(Arrays.asList(beanFactory.getBeanNamesForType(getBeanClass(), true, false)));
+		}
+		int marked = 0;
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			if (!isUnused(usage, name) || !matchesBeanPattern(name)
+					|| (typeMatches != null && !typeMatches.contains(name))) {
+				continue;
+			}
+			BeanDefinition definition = beanFactory.getBeanDefinition(name);
+			if (definition.isAbstract() || !definition.isSingleton() || definition.isLazyInit()
+					|| !matchesBeanDefinition(beanFactory, name) || isCalledByContainer(beanFactory, name)) {
+				continue;
+			}
+			((AbstractBeanDefinition) definition).setLazyInit(true);
+			marked++;
+		}
+		log.info("Marked " + marked + " unused beans of " + usage.size() + " profiled as lazy-init");
+	}
+
+	/**
+	 * Whether the container calls bean {@code name} on its own, or may do so as far as can be
+	 * told from its definition.
+	 */
+	protected boolean isCalledByContainer(ConfigurableListableBeanFactory beanFactory, String name) {
+		BeanDefinition definition = beanFactory.getMergedBeanDefinition(name);
+		if (definition.getFactoryMethodName() != null || definition.getBeanClassName() == null) {
+			return true;
+		}
+		if (definition instanceof AbstractBeanDefinition
+				&& ((AbstractBeanDefinition) definition).getInitMethodName() != null) {
+			return true;
+		}
+		Class<?> beanClass;
+		try {
+			beanClass = ClassUtils.forName(definition.getBeanClassName(), beanFactory.getBeanClassLoader());
+		} catch (ClassNotFoundException e) {
+			return true;
+		} catch (LinkageError e) {
+			return true;
+		}
+		for (Class<?> callbackType : CONTAINER_CALLBACK_TYPES) {
+			if (callbackType.isAssignableFrom(beanClass)) {
+				if (log.isLoggable(Level.FINE)) {
+					log.fine("Not marking " + callbackType.getSimpleName() + " bean '" + name + "' as lazy-init");
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isUnused(Properties usage, String name) {
+		String calls = usage.getProperty(name);
+		if (calls == null) {
+			return false;
+		}
+		try {
+			return Long.parseLong(calls.trim()) == 0;
+		} catch (NumberFormatException e) {
+			log.warning("Ignoring invalid call count '" + calls + "' of bean '" + name + "'");
+			return false;
+		}
+	}
+
+	// Setter + getter methods
+	/**
+	 * Usage profile written by {@link BeanUsageRecorder}
+	 */
+	public void setProfile(Resource profile) {
+		this.profile = profile;
+	}
+
+	public Resource getProfile() {
+		return profile;
+	}
+
+	private static Logger log = Logger.getLogger(LazyInitUnusedBeans.class.getName());
+}
@@ -0,0 +1,311 @@
+package net.flicken.util.spring;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.ErrorManager;
+import java.util.logging.FileHandler;
+import java.util.logging.Filter;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Writes formatted records into memory-mapped, pre-allocated log segments, so that
+ * publishing a record is a memory copy rather than a write system call.  Intended for
+ * high-volume logs, such as audit logs, where {@link FileHandler}'s stream writes and
+ * flushes limit throughput.
+ *
+ * When a record does not fit in the current segment, the next segment is created with
+ * {@code segmentSize} bytes and mapped.  Segments are numbered from one above the highest
+ * existing segment, and only the last {@code count} are kept.  Written records are in the
+ * page cache at once, so survive the process exiting; {@link #flush()} also forces them to
+ * disk.  Segments are read with {@link MappedLogReader}, see there for the format.
+ *
+ * Configured through the resources loaded by {@link JavaLoggingConfigurer}, e.g.:
+ * <code><pre>
+ * com.example.audit.handlers = net.flicken.util.spring.MappedFileHandler
+ * com.example.audit.useParentHandlers = false
+ * net.flicken.util.spring.MappedFileHandler.pattern = /var/log/example/audit-%g.mlog
+ * net.flicken.util.spring.MappedFileHandler.segmentSize = 67108864
+ * net.flicken.util.spring.MappedFileHandler.count = 16
+ * </pre></code>
+ *
+ * Supported properties (prefixed by the handler class name):
+ * <ul>
+ *   <li><code>pattern</code> - segment file name, where <code>%t</code> is the temporary directory,
+ *       <code>%h</code> the user's home directory, and <code>%g</code> the segment number, defaults
+ *       to <code>%h/java-%g.mlog</code>
+ *   <li><code>segmentSize</code> - bytes per segment, defaults to 16MB
+ *   <li><code>count</code> - segments kept, or <code>0</code> to keep all, defaults to <code>0</code>
+ *   <li><code>level</code> - handler level, defaults to {@link Level#ALL}
+ *   <li><code>filter</code> - class name of {@link Filter}
+ *   <li><code>formatter</code> - class name of {@link Formatter}, defaults to {@link SimpleFormatter}
+ *   <li><code>encoding</code> - character encoding of records, defaults to UTF-8
+ * </ul>
+ *
+ * @see MappedLogReader
+ * @see JavaLoggingConfigurer
+ * @author broberts
+ */
+public class MappedFileHandler extends Handler {
+	public static final String DEFAULT_PATTERN = "%h/java-%g.mlog";
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private final String pattern;
+	private final int segmentSize;
+	private final int count;
+
+	private long segmentNumber;
+	private MappedByteBuffer segment;
+	private boolean closed = false;
+
+	/**
+	 * Creates handler from {@link LogManager} properties, as used by the
+	 * logging configuration.
+	 */
+	public MappedFileHandler() {
+		this(getProperty("pattern", DEFAULT_PATTERN),
+			Integer.parseInt(getProperty("segmentSize", String.valueOf(DEFAULT_SEGMENT_SIZE))),
+			Integer.parseInt(getProperty("count", "0")));
+		configure();
+	}
+
+	/**
+	 * Creates handler writing segments named by {@code pattern}.  The first segment is
+	 * created when the first record is published.
+	 *
+	 * @param pattern segment file name pattern, see class documentation
+	 * @param segmentSize bytes per segment
+	 * @param count segments kept, or {@code 0} to keep all
+	 */
+	public MappedFileHandler(String pattern, int segmentSize, int count) {
+		if (segmentSize <= MappedLogReader.HEADER_SIZE) {
+			throw new IllegalArgumentException("segmentSize must be larger than " + MappedLogReader.HEADER_SIZE + ", got: " + segmentSize);
+		}
+		this.pattern = expand(pattern);
+		this.segmentSize = segmentSize;
+		this.count = count;
+		setLevel(Level.ALL);
+		setFormatter(new SimpleFormatter());
+		try {
+			setEncoding("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		segmentNumber = findLastSegmentNumber();
+	}
+
+	@Override
+	public synchronized void publish(LogRecord record) {
+		if (closed || !isLoggable(record)) {
+			return;
+		}
+		String message;
+		try {
+			message = getFormatter().format(record);
+		} catch (Exception e) {
+			reportError(null, e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+		write(message);
+	}
+
+	@Override
+	public synchronized void flush() {
+		if (segment != null) {
+			segment.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws SecurityException {
+		if (closed) {
+			return;
+		}
+		String tail = getFormatter().getTail(this);
+		if (tail.length() > 0 && segment != null) {
+			write(tail);
+		}
+		flush();
+		closed = true;
+		segment = null;
+	}
+
+	/**
+	 * File of segment {@code number}.
+	 */
+	public File getSegmentFile(long number) {
+		String name = pattern.replace("%g", String.format("%06d", number));
+		return new File(name);
+	}
+
+	/**
+	 * Number of the segment currently written.
+	 */
+	public synchronized long getSegmentNumber() {
+		return segmentNumber;
+	}
+
+	private void write(String message) {
+		byte[] bytes = encode(message);
+		if (bytes == null || bytes.length == 0) {
+			return;
+		}
+		if (segment == null || segment.remaining() < MappedLogReader.LENGTH_SIZE + bytes.length) {
+			// Rest of the segment stays zero, which the reader takes as its end
+			byte[] head = encode(getFormatter().getHead(this));
+			if (head == null) {
+				return;
+			}
+			try {
+				openSegment(MappedLogReader.LENGTH_SIZE * 2 + head.length + bytes.length);
+			} catch (IOException e) {
+				segment = null;
+				reportError("Cannot open log segment " + getSegmentFile(segmentNumber), e, ErrorManager.OPEN_FAILURE);
+				return;
+			}
+			putRecord(head);
+		}
+		putRecord(bytes);
+	}
+
+	private byte[] encode(String message) {
+		try {
+			return message.getBytes(getEncoding());
+		} catch (UnsupportedEncodingException e) {
+			reportError(null, e, ErrorManager.FORMAT_FAILURE);
+			return null;
+		}
+	}
+
+	private void putRecord(byte[] bytes) {
+		if (bytes.length == 0) {
+			return;
+		}
+		// Payload before length, so that a reader never sees the length of an unwritten record
+		int start = segment.position();
+		segment.position(start + MappedLogReader.LENGTH_SIZE);
+		segment.put(bytes);
+		segment.putInt(start, bytes.length);
+	}
+
+	private void openSegment(int recordsSize) throws IOException {
+		segmentNumber++;
+		File file = getSegmentFile(segmentNumber);
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		int size = Math.max(segmentSize, MappedLogReader.HEADER_SIZE + recordsSize);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			// Mapping stays valid once the channel is closed
+			raf.close();
+		}
+		segment.putInt(MappedLogReader.MAGIC);
+		segment.putInt(MappedLogReader.VERSION);
+
+		if (count > 0) {
+			getSegmentFile(segmentNumber - count).delete();
+		}
+	}
+
+	private long findLastSegmentNumber() {
+		File file = new File(pattern).getAbsoluteFile();
+		int index = file.getName().indexOf("%g");
+		long last = 0;
+		String[] names = file.getParentFile().list();
+		if (index < 0 || names == null) {
+			return last;
+		}
+		String prefix = file.getName().substring(0, index);
+		String suffix = file.getName().substring(index + 2);
+		for (String name : names) {
+			if (name.length() > prefix.length() + suffix.length() && name.startsWith(prefix) && name.endsWith(suffix)) {
+				try {
+					last = Math.max(last, Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+				} catch (NumberFormatException e) {
+					// Not a segment
+				}
+			}
+		}
+		return last;
+	}
+
+	private static String expand(String pattern) {
+		String expanded = pattern
+			.replace("%t", System.getProperty("java.io.tmpdir"))
+			.replace("%h", System.getProperty("user.home"));
+		if (expanded.indexOf("%g") < 0) {
+			expanded = expanded + ".%g";
+		}
+		return expanded;
+	}
+
+	private void configure() {
+		setLevel(Level.parse(getProperty("level", Level.ALL.getName())));
+
+		String filter = getProperty("filter", null);
+		if (filter != null) {
+			setFilter((Filter) newInstance(filter));
+		}
+		String formatter = getProperty("formatter", null);
+		if (formatter != null) {
+			setFormatter((Formatter) newInstance(formatter));
+		}
+		try {
+			setEncoding(getProperty("encoding", "UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			reportError("Unsupported encoding, using UTF-8", e, ErrorManager.GENERIC_FAILURE);
+		}
+	}
+
+	private static String getProperty(String name, String defaultValue) {
+		String value = LogManager.getLogManager().getProperty(MappedFileHandler.class.getName() + "." + name);
+		return value == null ? defaultValue : value.trim();
+	}
+
+	private static Object newInstance(String className) {
+		try {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			if (loader == null) {
+				loader = ClassLoader.getSystemClassLoader();
+			}
+			return Class.forName(className, true, loader).newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot create " + className + ": " + e.getMessage(), e);
+		}
+	}
+
+	// Setter + getter methods
+	/**
+	 * Segment file name pattern, with {@code %t} and {@code %h} expanded
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Bytes per segment
+	 */
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Segments kept, or {@code 0} if all are kept
+	 */
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,102 @@
+package net.flicken.util.spring;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads log segments written by {@link MappedFileHandler}.
+ *
+ * A segment is a four byte {@link #MAGIC} and a four byte {@link #VERSION}, followed by records, each
+ * a positive four byte length and that many bytes of the formatted record.  A length of
+ * zero, or the end of the file, ends the segment.  All integers are big-endian.
+ *
+ * As a command line utility, prints the records of the given segments in order:
+ * <code><pre>
+ * java -cp spring-utils.jar net.flicken.util.spring.MappedLogReader [-encoding UTF-8] audit-*.mlog
+ * </pre></code>
+ *
+ * @see MappedFileHandler
+ * @author broberts
+ */
+public class MappedLogReader {
+	public static final int MAGIC = 0x4D4C4F47; // "MLOG"
+	public static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int LENGTH_SIZE = 4;
+
+	private MappedLogReader() {
+	}
+
+	/**
+	 * Formatted records of {@code segment}, in the order written.
+	 *
+	 * @throws IOException if the segment cannot be read, or is not a segment
+	 */
+	public static List<String> readRecords(File segment, Charset charset) throws IOException {
+		List<String> records = new ArrayList<String>();
+		RandomAccessFile raf = new RandomAccessFile(segment, "r");
+		try {
+			ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a log segment: " + segment);
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported log segment version " + version + ": " + segment);
+			}
+			while (buffer.remaining() >= LENGTH_SIZE) {
+				int length = buffer.getInt();
+				if (length <= 0 || length > buffer.remaining()) {
+					break;
+				}
+				byte[] bytes = new byte[length];
+				buffer.get(bytes);
+				records.add(new String(bytes, charset.name()));
+			}
+		} finally {
+			raf.close();
+		}
+		return records;
+	}
+
+	public static List<String> readRecords(File segment) throws IOException {
+		return readRecords(segment, Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * Prints the records of each segment to {@code out}, which are already line terminated
+	 * by most formatters.
+	 */
+	public static void print(List<File> segments, Charset charset, PrintStream out) throws IOException {
+		for (File segment : segments) {
+			for (String record : readRecords(segment, charset)) {
+				out.print(record);
+			}
+		}
+		out.flush();
+	}
+
+	public static void main(String[] args) throws IOException {
+		Charset charset = Charset.forName("UTF-8");
+		List<File> segments = new ArrayList<File>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-encoding") && i + 1 < args.length) {
+				charset = Charset.forName(args[++i]);
+			} else {
+				segments.add(new File(args[i]));
+			}
+		}
+		if (segments.isEmpty()) {
+			System.err.println("Usage: " + MappedLogReader.class.getName() + " [-encoding charset] segment...");
+			System.exit(1);
+		}
+		print(segments, charset, System.out);
+	}
+}
@@ -0,0 +1,281 @@
+package net.flicken.util.spring;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Estimates the memory footprint of object graphs by walking their references
+ * reflectively.
+ *
+ * Shallow sizes are exact when the JVM is started with this jar as an agent
+ * ({@code -javaagent:spring-utils.jar}), and are otherwise estimated for a 64-bit JVM
+ * with compressed references.  Each object is counted once, by identity.
+ *
+ * The retained size of a root is approximated by the objects reachable only from
+ * that root, among the roots measured together; objects reachable from several roots
+ * are counted in the reachable size of each, but in the retained size of none.  The
+ * walk stops at boundary objects, such as other singletons, and at classes, class
+ * loaders, threads and enum constants.
+ *
+ * @see BeanFootprintReporter
+ * @author broberts
+ */
+public class ObjectGraphSizer {
+	private static final int OBJECT_HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+	private static final int ALIGNMENT = 8;
+
+	private static volatile Instrumentation instrumentation;
+
+	private final ConcurrentMap<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<Class<?>, ClassLayout>();
+
+	public static void premain(String args, Instrumentation inst) {
+		instrumentation = inst;
+	}
+
+	public static void agentmain(String args, Instrumentation inst) {
+		instrumentation = inst;
+	}
+
+	/**
+	 * Whether shallow sizes come from an instrumentation agent, rather than estimates.
+	 */
+	public static boolean isInstrumented() {
+		return instrumentation != null;
+	}
+
+	/**
+	 * Size of {@code object} alone, excluding the objects it references.
+	 */
+	public long shallowSize(Object object) {
+		Instrumentation inst = instrumentation;
+		if (inst != null) {
+			return inst.getObjectSize(object);
+		}
+		Class<?> type = object.getClass();
+		if (type.isArray()) {
+			Class<?> component = type.getComponentType();
+			int elementSize = component.isPrimitive() ? primitiveSize(component) : REFERENCE;
+			return align(ARRAY_HEADER + (long) Array.getLength(object) * elementSize);
+		}
+		return layout(type).size;
+	}
+
+	/**
+	 * Measures the footprint of each root.
+	 *
+	 * @param roots objects to measure, by key
+	 * @param boundaries objects at which the walk stops, unless they are the root being measured
+	 * @return footprint of each root, in the order of {@code roots}
+	 */
+	public <K> Map<K, Footprint> measure(Map<K, ?> roots, Collection<?> boundaries) {
+		Map<Object, Object> boundarySet = new IdentityHashMap<Object, Object>();
+		for (Object boundary : boundaries) {
+			boundarySet.put(boundary, boundary);
+		}
+
+		Map<Object, Owner> owners = new IdentityHashMap<Object, Owner>();
+		List<Footprint> footprints = new ArrayList<Footprint>(roots.size());
+		List<Object> stack = new ArrayList<Object>();
+		int index = 0;
+		for (Object root : roots.values()) {
+			Footprint footprint = new Footprint();
+			footprints.add(footprint);
+			if (root == null) {
+				index++;
+				continue;
+			}
+			footprint.shallowSize = shallowSize(root);
+
+			stack.add(root);
+			while (!stack.isEmpty()) {
+				Object object = stack.remove(stack.size() - 1);
+				Owner owner = owners.get(object);
+				if (owner == null) {
+					owner = new Owner(index, shallowSize(object));
+					owners.put(object, owner);
+				} else if (owner.lastRoot == index) {
+					continue;
+				} else {
+					owner.lastRoot = index;
+					owner.shared = true;
+				}
+				footprint.reachableSize += owner.size;
+				footprint.objectCount++;
+				pushReferences(object, root, boundarySet, stack);
+			}
+			index++;
+		}
+
+		for (Owner owner : owners.values()) {
+			if (!owner.shared) {
+				footprints.get(owner.firstRoot).retainedSize += owner.size;
+			}
+		}
+
+		Map<K, Footprint> result = new LinkedHashMap<K, Footprint>();
+		index = 0;
+		for (K key : roots.keySet()) {
+			result.put(key, footprints.get(index++));
+		}
+		return result;
+	}
+
+	private void pushReferences(Object object, Object root, Map<Object, Object> boundaries, List<Object> stack) {
+		Class<?> type = object.getClass();
+		if (type.isArray()) {
+			if (!type.getComponentType().isPrimitive()) {
+				for (Object element : (Object[]) object) {
+					push(element, root, boundaries, stack);
+				}
+			}
+			return;
+		}
+		for (Field field : layout(type).references) {
+			try {
+				push(field.get(object), root, boundaries, stack);
+			} catch (IllegalAccessException e) {
+				log.fine("Cannot read " + field + ": " + e);
+			}
+		}
+	}
+
+	private static void push(Object object, Object root, Map<Object, Object> boundaries, List<Object> stack) {
+		if (object == null || object instanceof Class<?> || object instanceof ClassLoader
+				|| object instanceof Thread || object instanceof Enum<?>) {
+			return;
+		}
+		if (object != root && boundaries.containsKey(object)) {
+			return;
+		}
+		stack.add(object);
+	}
+
+	private ClassLayout layout(Class<?> type) {
+		ClassLayout layout = layouts.get(type);
+		if (layout == null) {
+			layout = new ClassLayout(type);
+			layouts.putIfAbsent(type, layout);
+		}
+		return layout;
+	}
+
+	private static int primitiveSize(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		} else if (type == int.class || type == float.class) {
+			return 4;
+		} else if (type == short.class || type == char.class) {
+			return 2;
+		}
+		return 1;
+	}
+
+	private static long align(long size) {
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	// Inner classes
+	/**
+	 * Sizes, in bytes, of the objects reachable from a root.
+	 */
+	public static class Footprint {
+		private long shallowSize;
+		private long reachableSize;
+		private long retainedSize;
+		private int objectCount;
+
+		/**
+		 * Size of the root object alone.
+		 */
+		public long getShallowSize() {
+			return shallowSize;
+		}
+
+		/**
+		 * Size of all objects reachable from the root, within the boundaries.
+		 */
+		public long getReachableSize() {
+			return reachableSize;
+		}
+
+		/**
+		 * Size of the objects reachable only from the root.
+		 */
+		public long getRetainedSize() {
+			return retainedSize;
+		}
+
+		/**
+		 * Number of objects reachable from the root.
+		 */
+		public int getObjectCount() {
+			return objectCount;
+		}
+
+		@Override
+		public String toString() {
+			return "retained=" + retainedSize + " reachable=" + reachableSize + " shallow=" + shallowSize + " objects=" + objectCount;
+		}
+	}
+
+	private static class Owner {
+		final int firstRoot;
+		final long size;
+		int lastRoot;
+		boolean shared;
+
+		Owner(int root, long size) {
+			this.firstRoot = root;
+			this.lastRoot = root;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Estimated instance size and reference fields of a class.
+	 */
+	private static class ClassLayout {
+		final long size;
+		final Field[] references;
+
+		ClassLayout(Class<?> type) {
+			long fieldSize = 0;
+			List<Field> referenceFields = new ArrayList<Field>();
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers())) {
+						continue;
+					}
+					if (field.getType().isPrimitive()) {
+						fieldSize += primitiveSize(field.getType());
+						continue;
+					}
+					fieldSize += REFERENCE;
+					try {
+						field.setAccessible(true);
+						referenceFields.add(field);
+					} catch (RuntimeException e) {
+						log.fine("Cannot access " + field + ": " + e);
+					}
+				}
+			}
+			this.size = align(OBJECT_HEADER + fieldSize);
+			this.references = referenceFields.toArray(new Field[referenceFields.size()]);
+		}
+	}
+
+	private static Logger log = Logger.getLogger(ObjectGraphSizer.class.getName());
+}
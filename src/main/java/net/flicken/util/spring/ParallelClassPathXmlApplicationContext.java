@@ -0,0 +1,34 @@
+package net.flicken.util.spring;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * {@link ClassPathXmlApplicationContext} which pre-instantiates independent singletons
+ * concurrently, using a {@link ParallelInitializingBeanFactory}.
+ * 
+ * @see ParallelInitializingBeanFactory
+ * @see ParallelInitializationConfigurer
+ * @author broberts
+ */
+public class ParallelClassPathXmlApplicationContext extends ClassPathXmlApplicationContext {
+
+	public ParallelClassPathXmlApplicationContext(String... configLocations) throws BeansException {
+		super(configLocations);
+	}
+
+	public ParallelClassPathXmlApplicationContext(String[] configLocations, ApplicationContext parent) throws BeansException {
+		super(configLocations, parent);
+	}
+
+	public ParallelClassPathXmlApplicationContext(String path, Class<?> clazz) throws BeansException {
+		super(path, clazz);
+	}
+
+	@Override
+	protected DefaultListableBeanFactory createBeanFactory() {
+		return new ParallelInitializingBeanFactory(getInternalParentBeanFactory());
+	}
+}
@@ -0,0 +1,92 @@
+package net.flicken.util.spring;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+/**
+ * Configures parallel singleton creation by a {@link ParallelInitializingBeanFactory}
+ * from within the context, excluding beans which must be created sequentially.
+ * 
+ * <code><pre>
+ *  &lt;bean class="net.flicken.util.spring.ParallelInitializationConfigurer"&gt;
+ *		&lt;property name="threads" value="8"/&gt;
+ *		&lt;property name="excludedBeans"&gt;
+ *			&lt;bean class="net.flicken.util.spring.BeanFilteringSupport"&gt;
+ *				&lt;property name="beanPattern" value="legacy*"/&gt;
+ *			&lt;/bean&gt;
+ *		&lt;/property&gt;
+ *  &lt;/bean&gt;
+ * </pre></code>
+ * 
+ * Excluded beans are matched on their definitions only, so that no bean is created while
+ * post-processing: by pattern, definition filters, and predicted type for {@code beanClass}.
+ * Factory beans which are not created yet only match {@code beanClass} by their own class.
+ *
+ * Has no effect on other bean factories.  Configures the bean factory itself, so is
+ * invoked again when definitions are loaded from a {@link BeanDefinitionCache}.
+ * 
+ * @see ParallelInitializingBeanFactory
+ * @author broberts
+ */
+public class ParallelInitializationConfigurer implements BeanDefinitionCache.ReappliedPostProcessor {
+	private int threads = 0;
+	private BeanFilteringSupport excludedBeans;
+
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+			throws BeansException {
+		if (!(beanFactory instanceof ParallelInitializingBeanFactory)) {
+			log.info("Not a " + ParallelInitializingBeanFactory.class.getSimpleName() + ", singletons will be created sequentially");
+			return;
+		}
+		
+		if (threads > 0) {
+			((ParallelInitializingBeanFactory) beanFactory).setThreads(threads);
+		}
+		if (excludedBeans != null) {
+			Set<String> typeMatches = null;
+			Class<?> beanClass = excludedBeans.getBeanClass();
+			if (beanClass != null && beanClass != Object.class) {
+				typeMatches = new HashSet<String>();
+				for (String name : beanFactory.getBeanNamesForType(beanClass, true, false)) {
+					typeMatches.add(BeanFactoryUtils.transformedBeanName(name));
+				}
+			}
+			for (String name : beanFactory.getBeanDefinitionNames()) {
+				if (excludedBeans.matchesBeanPattern(name) && (typeMatches == null || typeMatches.contains(name))
+						&& excludedBeans.matchesBeanDefinition(beanFactory, name)) {
+					log.fine("Excluding bean '" + name + "' from parallel creation");
+					beanFactory.getBeanDefinition(name).setAttribute(ParallelInitializingBeanFactory.SEQUENTIAL_ATTRIBUTE, Boolean.TRUE);
+				}
+			}
+		}
+	}
+
+	/**
+	 * (Optional) Number of threads used to create singletons.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * (Optional) Beans which are created sequentially, after all others.
+	 */
+	public void setExcludedBeans(BeanFilteringSupport excludedBeans) {
+		this.excludedBeans = excludedBeans;
+	}
+
+	public BeanFilteringSupport getExcludedBeans() {
+		return excludedBeans;
+	}
+
+	private static Logger log = Logger.getLogger(ParallelInitializationConfigurer.class.getName());
+}
@@ -0,0 +1,484 @@
+package net.flicken.util.spring;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanCreationNotAllowedException;
+import org.springframework.beans.factory.BeanCurrentlyInCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+/**
+ * Bean factory which pre-instantiates independent singletons concurrently.
+ *
+ * A dependency graph is built from the bean definitions, using <code>depends-on</code>,
+ * bean references in properties and constructor arguments (including inner beans and
+ * collections), and factory beans.  Each singleton is created on a bounded pool of
+ * {@link #setThreads(int) threads} once all its dependencies exist.  Remaining singletons
+ * are then pre-instantiated as usual.
+ *
+ * Spring normally holds a single lock while creating any singleton, which would serialize
+ * parallel creation.  During the parallel phase this factory locks per bean instead:
+ * a thread needing a bean which another thread is creating waits for it.  Early references
+ * are never handed to another thread.  If waiting could deadlock, because the threads wait
+ * for each other or because the waiting thread holds Spring's singleton lock (e.g. while
+ * getting the object of a {@link org.springframework.beans.factory.FactoryBean}), the
+ * waiting bean's creation is abandoned and it is created sequentially afterwards instead,
+ * along with the beans depending on it.
+ *
+ * Beans are created sequentially, after the parallel phase, if they are factory beans,
+ * are autowired (so dependencies are not known from the definition), or have the
+ * {@link #SEQUENTIAL_ATTRIBUTE} attribute, e.g. set by {@link ParallelInitializationConfigurer}
+ * or <code>&lt;meta key="net.flicken.util.spring.ParallelInitializingBeanFactory.sequential" value="true"/&gt;</code>.
+ * Bean definitions removed by a {@link BeanRemover} are never created, as the graph
+ * is built after all bean factory post processors have run.
+ *
+ * @see ParallelClassPathXmlApplicationContext
+ * @author broberts
+ */
+public class ParallelInitializingBeanFactory extends DefaultListableBeanFactory {
+	public static final String SEQUENTIAL_ATTRIBUTE = ParallelInitializingBeanFactory.class.getName() + ".sequential";
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private volatile boolean parallelPhase = false;
+	private final ConcurrentMap<String, Creation> creations = new ConcurrentHashMap<String, Creation>();
+	private final ConcurrentMap<Thread, String> waitingFor = new ConcurrentHashMap<Thread, String>();
+	private final ThreadLocal<Set<Exception>> suppressedExceptions = new ThreadLocal<Set<Exception>>();
+	private volatile boolean destroying = false;
+
+	public ParallelInitializingBeanFactory() {
+	}
+
+	public ParallelInitializingBeanFactory(BeanFactory parentBeanFactory) {
+		super(parentBeanFactory);
+	}
+
+	@Override
+	public void preInstantiateSingletons() throws BeansException {
+		Map<String, Node> graph = buildGraph();
+		if (threads > 1 && graph.size() > 1) {
+			createInParallel(graph);
+		}
+		super.preInstantiateSingletons();
+	}
+
+	/**
+	 * Builds dependency graph of all singletons eligible for parallel creation.
+	 */
+	protected Map<String, Node> buildGraph() {
+		Map<String, Node> graph = new LinkedHashMap<String, Node>();
+		for (String name : getBeanDefinitionNames()) {
+			if (isParallelCandidate(name)) {
+				graph.put(name, new Node(name));
+			}
+		}
+
+		for (Node node : graph.values()) {
+			for (String dependency : findDependencies(getMergedLocalBeanDefinition(node.name))) {
+				Node required = graph.get(dependency);
+				if (required != null && required != node) {
+					node.pending.incrementAndGet();
+					required.dependents.add(node);
+				}
+			}
+		}
+		return graph;
+	}
+
+	protected boolean isParallelCandidate(String name) {
+		if (containsSingleton(name)) {
+			return false;
+		}
+		RootBeanDefinition definition = getMergedLocalBeanDefinition(name);
+		if (definition.isAbstract() || !definition.isSingleton() || definition.isLazyInit()) {
+			return false;
+		}
+		Object sequential = definition.getAttribute(SEQUENTIAL_ATTRIBUTE);
+		if (Boolean.TRUE.equals(sequential) || "true".equals(sequential)) {
+			return false;
+		}
+		return definition.getResolvedAutowireMode() == AbstractBeanDefinition.AUTOWIRE_NO
+			&& !isFactoryBean(name);
+	}
+
+	/**
+	 * Names of beans referenced by {@code definition}.
+	 */
+	protected Set<String> findDependencies(BeanDefinition definition) {
+		Set<String> dependencies = new LinkedHashSet<String>();
+		collectDependencies(definition, dependencies);
+		return dependencies;
+	}
+
+	private void collectDependencies(BeanDefinition definition, Set<String> dependencies) {
+		if (definition instanceof AbstractBeanDefinition) {
+			String[] dependsOn = ((AbstractBeanDefinition) definition).getDependsOn();
+			if (dependsOn != null) {
+				for (String name : dependsOn) {
+					dependencies.add(transformedBeanName(name));
+				}
+			}
+		}
+		if (definition.getFactoryBeanName() != null) {
+			dependencies.add(transformedBeanName(definition.getFactoryBeanName()));
+		}
+		for (PropertyValue value : definition.getPropertyValues().getPropertyValues()) {
+			collectDependencies(value.getValue(), dependencies);
+		}
+		for (Object holder : definition.getConstructorArgumentValues().getIndexedArgumentValues().values()) {
+			collectDependencies(((ValueHolder) holder).getValue(), dependencies);
+		}
+		for (Object holder : definition.getConstructorArgumentValues().getGenericArgumentValues()) {
+			collectDependencies(((ValueHolder) holder).getValue(), dependencies);
+		}
+	}
+
+	private void collectDependencies(Object value, Set<String> dependencies) {
+		if (value instanceof RuntimeBeanReference) {
+			RuntimeBeanReference reference = (RuntimeBeanReference) value;
+			if (!reference.isToParent()) {
+				dependencies.add(transformedBeanName(reference.getBeanName()));
+			}
+		}
+		else if (value instanceof BeanDefinitionHolder) {
+			collectDependencies(((BeanDefinitionHolder) value).getBeanDefinition(), dependencies);
+		}
+		else if (value instanceof BeanDefinition) {
+			collectDependencies((BeanDefinition) value, dependencies);
+		}
+		else if (value instanceof Collection) {
+			for (Object element : (Collection<?>) value) {
+				collectDependencies(element, dependencies);
+			}
+		}
+		else if (value instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				collectDependencies(entry.getKey(), dependencies);
+				collectDependencies(entry.getValue(), dependencies);
+			}
+		}
+	}
+
+	/**
+	 * Creates beans in {@code graph} on the thread pool, each once all its dependencies
+	 * exist.  Beans on dependency cycles are left for sequential creation.
+	 */
+	protected void createInParallel(Map<String, Node> graph) {
+		long start = System.currentTimeMillis();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, new CreationThreadFactory());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final AtomicInteger running = new AtomicInteger();
+		final CountDownLatch finished = new CountDownLatch(1);
+
+		parallelPhase = true;
+		try {
+			List<Node> ready = new ArrayList<Node>();
+			for (Node node : graph.values()) {
+				if (node.pending.get() == 0) {
+					ready.add(node);
+				}
+			}
+			if (ready.isEmpty()) {
+				return;
+			}
+			running.addAndGet(ready.size());
+			for (Node node : ready) {
+				submit(executor, node, failure, running, finished);
+			}
+			finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while creating singletons in parallel", e);
+		} finally {
+			executor.shutdownNow();
+			parallelPhase = false;
+		}
+
+		Throwable cause = failure.get();
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		log.info("Created " + graph.size() + " singletons on " + threads + " threads in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	private void submit(final ExecutorService executor, final Node node, final AtomicReference<Throwable> failure,
+			final AtomicInteger running, final CountDownLatch finished) {
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					if (failure.get() == null) {
+						getBean(node.name);
+						for (Node dependent : node.dependents) {
+							if (dependent.pending.decrementAndGet() == 0) {
+								running.incrementAndGet();
+								submit(executor, dependent, failure, running, finished);
+							}
+						}
+					}
+				} catch (Throwable e) {
+					if (isCreationConflict(e)) {
+						// Left, with its dependents, for sequential creation
+						log.fine("Creating '" + node.name + "' sequentially: " + e.getMessage());
+					} else {
+						failure.compareAndSet(null, e);
+					}
+				} finally {
+					if (running.decrementAndGet() == 0) {
+						finished.countDown();
+					}
+				}
+			}
+		});
+	}
+
+	private static boolean isCreationConflict(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof CreationConflictException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Waits for beans being created by other threads, so that an early reference to
+	 * a bean another thread is still creating is never returned.
+	 */
+	@Override
+	public Object getSingleton(String beanName) {
+		if (parallelPhase) {
+			Creation creation = creations.get(beanName);
+			if (creation != null && creation.thread != Thread.currentThread()) {
+				awaitCreation(beanName, creation);
+			}
+			// Another thread's failed creation leaves no early reference, so the caller creates the bean
+		}
+		return super.getSingleton(beanName);
+	}
+
+	/**
+	 * During the parallel phase, creates singletons holding a lock for that bean only.
+	 */
+	@Override
+	public Object getSingleton(String beanName, ObjectFactory singletonFactory) {
+		if (!parallelPhase) {
+			return super.getSingleton(beanName, singletonFactory);
+		}
+
+		Thread current = Thread.currentThread();
+		while (true) {
+			if (containsSingleton(beanName)) {
+				return super.getSingleton(beanName);
+			}
+			if (destroying) {
+				throw new BeanCreationNotAllowedException(beanName, "Singleton bean creation not allowed while the singletons of this factory are in destruction");
+			}
+
+			Creation created = new Creation(current);
+			Creation existing = creations.putIfAbsent(beanName, created);
+			if (existing == null) {
+				try {
+					if (containsSingleton(beanName)) {
+						return super.getSingleton(beanName);
+					}
+					Object singleton = createSingleton(beanName, singletonFactory);
+					addSingleton(beanName, singleton);
+					return singleton;
+				} finally {
+					creations.remove(beanName);
+					created.done.countDown();
+				}
+			}
+			else if (existing.thread == current) {
+				// Circular reference within this thread, handled as usual
+				return super.getSingleton(beanName, singletonFactory);
+			}
+			awaitCreation(beanName, existing);
+		}
+	}
+
+	private Object createSingleton(String beanName, ObjectFactory singletonFactory) {
+		boolean outermost = suppressedExceptions.get() == null;
+		if (outermost) {
+			suppressedExceptions.set(new LinkedHashSet<Exception>());
+		}
+		beforeSingletonCreation(beanName);
+		try {
+			return singletonFactory.getObject();
+		} catch (BeanCreationException e) {
+			if (outermost) {
+				for (Exception suppressed : suppressedExceptions.get()) {
+					e.addRelatedCause(suppressed);
+				}
+			}
+			throw e;
+		} finally {
+			if (outermost) {
+				suppressedExceptions.remove();
+			}
+			afterSingletonCreation(beanName);
+		}
+	}
+
+	/**
+	 * Collects exceptions suppressed while creating singletons on this thread, as for sequential creation.
+	 */
+	@Override
+	protected void onSuppressedException(Exception ex) {
+		Set<Exception> suppressed = suppressedExceptions.get();
+		if (suppressed != null) {
+			suppressed.add(ex);
+		} else {
+			super.onSuppressedException(ex);
+		}
+	}
+
+	@Override
+	public void destroySingletons() {
+		destroying = true;
+		try {
+			super.destroySingletons();
+		} finally {
+			destroying = false;
+		}
+	}
+
+	/**
+	 * Waits for {@code creation} of {@code beanName} to finish.
+	 *
+	 * @throws CreationConflictException, without waiting, if waiting could deadlock
+	 */
+	private void awaitCreation(String beanName, Creation creation) {
+		// Threads holding the singleton lock must never wait, as the creating thread needs it to finish
+		if (Thread.holdsLock(getSingletonMutex())) {
+			throw new CreationConflictException(beanName, "Bean is being created on another thread, while this thread holds the singleton lock");
+		}
+		Thread current = Thread.currentThread();
+		waitingFor.put(current, beanName);
+		try {
+			if (wouldDeadlock(creation.thread)) {
+				throw new CreationConflictException(beanName, "Circular reference between beans created on different threads");
+			}
+			creation.done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BeanCurrentlyInCreationException(beanName, "Interrupted while waiting for bean creation on another thread");
+		} finally {
+			waitingFor.remove(current);
+		}
+	}
+
+	private boolean wouldDeadlock(Thread owner) {
+		Thread current = Thread.currentThread();
+		Thread thread = owner;
+		for (int i = 0; thread != null && i <= creations.size(); i++) {
+			if (thread == current) {
+				return true;
+			}
+			String awaited = waitingFor.get(thread);
+			Creation creation = awaited == null ? null : creations.get(awaited);
+			thread = creation == null ? null : creation.thread;
+		}
+		return false;
+	}
+
+	// Setter + getter methods
+	/**
+	 * Number of threads used to create singletons, defaults to the number of processors.
+	 * A value of 1 disables parallel creation.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1, got: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	// Inner classes
+	/**
+	 * Singleton in the dependency graph.
+	 */
+	protected static class Node {
+		final String name;
+		final AtomicInteger pending = new AtomicInteger();
+		final List<Node> dependents = new ArrayList<Node>();
+
+		Node(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public List<Node> getDependents() {
+			return dependents;
+		}
+	}
+
+	/**
+	 * Thrown when a bean cannot wait for another thread's creation of a bean, so that the
+	 * bean being created is left for sequential creation.
+	 */
+	@SuppressWarnings("serial")
+	private static class CreationConflictException extends BeanCurrentlyInCreationException {
+		CreationConflictException(String beanName, String message) {
+			super(beanName, message);
+		}
+	}
+
+	/**
+	 * Singleton currently being created by a thread.
+	 */
+	private static class Creation {
+		final Thread thread;
+		final CountDownLatch done = new CountDownLatch(1);
+
+		Creation(Thread thread) {
+			this.thread = thread;
+		}
+	}
+
+	private static class CreationThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "singleton-creation-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static Logger log = Logger.getLogger(ParallelInitializingBeanFactory.class.getName());
+}
@@ -0,0 +1,209 @@
+package net.flicken.util.spring;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Registry of plugins for use as the {@code target} of a {@link RegisteringBeanPostProcessor},
+ * tuned for many concurrent readers and a plugin set that is written once, at refresh.
+ *
+ * Plugins are held in a copy-on-write array, so reads take no locks and always see a
+ * consistent snapshot.  Registering appends in place while the array has room, so
+ * registering beans one at a time at refresh costs amortized constant time per bean;
+ * {@link #registerAll(Collection)} publishes many plugins at once.  Lookups by type are
+ * cached per snapshot, so finding the plugins of a type is a single map lookup once
+ * the type has been asked for.
+ * <code><pre>
+ *	&lt;bean id="registry" class="net.flicken.util.spring.PluginRegistry"/&gt;
+ *
+ *	&lt;bean name="registry.register" class="net.flicken.util.spring.RegisteringBeanPostProcessor"&gt;
+ *	  &lt;property name="beanClass" value="com.example.Plugin"/&gt;
+ *	&lt;/bean&gt;
+ * </pre></code>
+ * Since {@link #register(Object)} takes any object, set the processor's {@code beanClass}.
+ *
+ * @author broberts
+ */
+public class PluginRegistry<T> implements Iterable<T> {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private volatile Snapshot snapshot = new Snapshot(new Object[0], 0);
+	private final Object writeLock = new Object();
+
+	/**
+	 * Adds {@code plugin} to the registry.
+	 *
+	 * @throws IllegalArgumentException if {@code plugin} is {@code null}
+	 */
+	public void register(T plugin) {
+		Assert.notNull(plugin, "plugin must not be null");
+		synchronized (writeLock) {
+			Snapshot current = snapshot;
+			Object[] plugins = current.plugins;
+			if (current.size == plugins.length) {
+				plugins = copyOf(plugins, current.size, Math.max(INITIAL_CAPACITY, current.size * 2));
+			}
+			// Slots beyond a snapshot's size are never read through that snapshot
+			plugins[current.size] = plugin;
+			snapshot = new Snapshot(plugins, current.size + 1);
+		}
+	}
+
+	/**
+	 * Adds all {@code plugins} to the registry, publishing them together.
+	 *
+	 * @throws IllegalArgumentException if any of {@code plugins} is {@code null}
+	 */
+	public void registerAll(Collection<? extends T> plugins) {
+		Object[] added = plugins.toArray();
+		Assert.noNullElements(added, "plugins must not contain null");
+		synchronized (writeLock) {
+			Snapshot current = snapshot;
+			Object[] all = copyOf(current.plugins, current.size, current.size + added.length);
+			System.arraycopy(added, 0, all, current.size, added.length);
+			snapshot = new Snapshot(all, all.length);
+		}
+	}
+
+	/**
+	 * Removes {@code plugin} from the registry.
+	 *
+	 * @return whether the plugin was registered
+	 */
+	public boolean unregister(T plugin) {
+		synchronized (writeLock) {
+			Snapshot current = snapshot;
+			for (int i = 0; i < current.size; i++) {
+				if (ObjectUtils.nullSafeEquals(current.plugins[i], plugin)) {
+					Object[] remaining = new Object[current.size - 1];
+					System.arraycopy(current.plugins, 0, remaining, 0, i);
+					System.arraycopy(current.plugins, i + 1, remaining, i, current.size - i - 1);
+					snapshot = new Snapshot(remaining, remaining.length);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * All registered plugins, in order of registration.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> getAll() {
+		return (List<T>) snapshot.asList();
+	}
+
+	/**
+	 * Registered plugins assignable to {@code type}, in order of registration.
+	 */
+	@SuppressWarnings("unchecked")
+	public <S> List<S> getAllOfType(Class<S> type) {
+		return (List<S>) snapshot.ofType(type);
+	}
+
+	/**
+	 * First registered plugin assignable to {@code type}, or {@code null} if none.
+	 */
+	public <S> S getFirstOfType(Class<S> type) {
+		List<S> plugins = getAllOfType(type);
+		return plugins.isEmpty() ? null : plugins.get(0);
+	}
+
+	public int size() {
+		return snapshot.size;
+	}
+
+	public boolean isEmpty() {
+		return snapshot.size == 0;
+	}
+
+	public Iterator<T> iterator() {
+		return getAll().iterator();
+	}
+
+	@Override
+	public String toString() {
+		return getAll().toString();
+	}
+
+	private static Object[] copyOf(Object[] array, int size, int capacity) {
+		Object[] copy = new Object[capacity];
+		System.arraycopy(array, 0, copy, 0, size);
+		return copy;
+	}
+
+	// Inner classes
+	/**
+	 * Immutable view of the first {@code size} plugins, with its own cache of lookups by type.
+	 */
+	private static class Snapshot {
+		final Object[] plugins;
+		final int size;
+		final ConcurrentMap<Class<?>, List<?>> byType = new ConcurrentHashMap<Class<?>, List<?>>();
+		List<?> all;
+
+		Snapshot(Object[] plugins, int size) {
+			this.plugins = plugins;
+			this.size = size;
+		}
+
+		List<?> asList() {
+			List<?> list = all;
+			if (list == null) {
+				list = all = new ArrayView(plugins, size);
+			}
+			return list;
+		}
+
+		List<?> ofType(Class<?> type) {
+			List<?> matches = byType.get(type);
+			if (matches == null) {
+				List<Object> found = new ArrayList<Object>();
+				for (int i = 0; i < size; i++) {
+					if (type.isInstance(plugins[i])) {
+						found.add(plugins[i]);
+					}
+				}
+				matches = found.isEmpty() ? Collections.emptyList() : new ArrayView(found.toArray(), found.size());
+				byType.putIfAbsent(type, matches);
+			}
+			return matches;
+		}
+	}
+
+	/**
+	 * Unmodifiable list over the first {@code size} elements of an array.
+	 */
+	private static class ArrayView extends AbstractList<Object> {
+		private final Object[] elements;
+		private final int size;
+
+		ArrayView(Object[] elements, int size) {
+			this.elements = elements;
+			this.size = size;
+		}
+
+		@Override
+		public Object get(int index) {
+			if (index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+			}
+			return elements[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package net.flicken.util.spring;
 
+import java.util.logging.Logger;
+
 import org.springframework.aop.framework.autoproxy.AutoProxyUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -13,6 +15,8 @@ import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
  * CGLib-enhanced, so that injection based on class instead of 
  * interface is possible.  
  * 
+ * Bean names without a definition are logged and skipped.
+ * 
  * @see AutoProxyUtils#PRESERVE_TARGET_CLASS_ATTRIBUTE
  * @author broberts
  */
@@ -23,6 +27,10 @@ public class PreserveBeanTargetClass implements BeanFactoryPostProcessor {
 			ConfigurableListableBeanFactory beanFactory)
 			throws BeansException {
 		for (int i = 0; i < beanNames.length; i++) {
+			if (!beanFactory.containsBeanDefinition(beanNames[i])) {
+				log.warning("No bean definition '" + beanNames[i] + "', not preserving target class");
+				continue;
+			}
 			BeanDefinition beanDef = beanFactory.getBeanDefinition(beanNames[i]);
 			beanDef.setAttribute(AutoProxyUtils.PRESERVE_TARGET_CLASS_ATTRIBUTE, Boolean.TRUE);
 		}
@@ -40,4 +48,5 @@ public class PreserveBeanTargetClass implements BeanFactoryPostProcessor {
 		this.beanNames = beanNames;
 	}
 
+	private static Logger log = Logger.getLogger(PreserveBeanTargetClass.class.getName());
 }
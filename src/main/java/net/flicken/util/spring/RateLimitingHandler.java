@@ -0,0 +1,435 @@
+package net.flicken.util.spring;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.ErrorManager;
+import java.util.logging.Filter;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Wraps another {@link Handler}, limiting how fast each logger may publish and
+ * collapsing repeated identical messages into periodic summaries.
+ *
+ * Records are first de-duplicated: the first record with a given logger, level,
+ * (unformatted) message, parameters and thrown exception class is published, further identical records within
+ * {@code summaryInterval} are counted and dropped, and the next one published after
+ * the interval is preceded by a "repeated N times" summary.  Records which pass
+ * de-duplication must then acquire a token from the per-logger token bucket,
+ * refilled at {@code rate} records per second up to {@code burst} records.
+ * Counters are lock-free, so hot loggers do not contend on the handler.
+ *
+ * Counts still pending when the handler is flushed or closed, or when tracked messages
+ * are reset after {@code maxTrackedMessages}, are published as summaries then, so a burst
+ * which stops is still reported.  Summaries are not rate limited and take no tokens; there
+ * is at most one per message per interval and one per logger per run of dropped records.
+ *
+ * Configured through the resources loaded by {@link JavaLoggingConfigurer}, e.g.:
+ * <code><pre>
+ * com.example.noisy.handlers = net.flicken.util.spring.RateLimitingHandler
+ * com.example.noisy.useParentHandlers = false
+ * net.flicken.util.spring.RateLimitingHandler.target = java.util.logging.ConsoleHandler
+ * net.flicken.util.spring.RateLimitingHandler.rate = 50
+ * net.flicken.util.spring.RateLimitingHandler.burst = 200
+ * net.flicken.util.spring.RateLimitingHandler.summaryInterval = 10000
+ * </pre></code>
+ *
+ * Supported properties (prefixed by the handler class name):
+ * <ul>
+ *   <li><code>target</code> - class name of wrapped handler, defaults to {@link ConsoleHandler}
+ *   <li><code>level</code> - handler level, defaults to {@link Level#ALL}
+ *   <li><code>filter</code> - class name of {@link Filter}
+ *   <li><code>formatter</code> - class name of {@link Formatter} set on the target
+ *   <li><code>rate</code> - records per second per logger, defaults to 100
+ *   <li><code>burst</code> - maximum records per logger published at once, defaults to <code>rate</code>
+ *   <li><code>summaryInterval</code> - milliseconds between repeat summaries, defaults to 10000
+ *   <li><code>maxTrackedMessages</code> - distinct messages tracked before counters are reset, defaults to 1000
+ * </ul>
+ *
+ * @see JavaLoggingConfigurer
+ * @author broberts
+ */
+public class RateLimitingHandler extends Handler {
+	public static final double DEFAULT_RATE = 100;
+	public static final long DEFAULT_SUMMARY_INTERVAL = 10000;
+	public static final int DEFAULT_MAX_TRACKED_MESSAGES = 1000;
+	private static final Formatter MESSAGE_FORMATTER = new SimpleFormatter();
+
+	private final Handler target;
+	private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+	private final ConcurrentMap<MessageKey, RepeatCounter> repeats = new ConcurrentHashMap<MessageKey, RepeatCounter>();
+
+	private volatile double rate = DEFAULT_RATE;
+	private volatile double burst = DEFAULT_RATE;
+	private volatile long summaryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SUMMARY_INTERVAL);
+	private volatile int maxTrackedMessages = DEFAULT_MAX_TRACKED_MESSAGES;
+
+	/**
+	 * Creates handler from {@link LogManager} properties, as used by the
+	 * logging configuration.
+	 */
+	public RateLimitingHandler() {
+		this(createHandler(getProperty("target", ConsoleHandler.class.getName())));
+		configure();
+	}
+
+	/**
+	 * Creates handler wrapping the given {@code target}, with default limits.
+	 *
+	 * @param target handler to which records are published
+	 */
+	public RateLimitingHandler(Handler target) {
+		if (target == null) {
+			throw new IllegalArgumentException("target handler must not be null");
+		}
+		this.target = target;
+		setLevel(Level.ALL);
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		RepeatCounter counter = getRepeatCounter(record);
+		if (!counter.tryPublish(now, summaryIntervalNanos)) {
+			return;
+		}
+
+		publishRepeatSummary(counter, record);
+
+		TokenBucket bucket = getTokenBucket(record.getLoggerName());
+		if (!bucket.tryAcquire(now)) {
+			bucket.setLastDropped(record);
+			return;
+		}
+
+		publishDropSummary(bucket, record);
+		target.publish(record);
+	}
+
+	/**
+	 * Publishes summaries of all pending suppressed and dropped records, then flushes the target.
+	 */
+	@Override
+	public void flush() {
+		publishPendingSummaries();
+		target.flush();
+	}
+
+	@Override
+	public void close() throws SecurityException {
+		publishPendingSummaries();
+		target.close();
+	}
+
+	protected void publishPendingSummaries() {
+		for (RepeatCounter counter : repeats.values()) {
+			publishRepeatSummary(counter, counter.getFirst());
+		}
+		for (TokenBucket bucket : buckets.values()) {
+			publishDropSummary(bucket, bucket.getLastDropped());
+		}
+	}
+
+	private void publishRepeatSummary(RepeatCounter counter, LogRecord record) {
+		int repeated = counter.takeSuppressed();
+		if (repeated > 0) {
+			target.publish(createSummary(record, repeated + " repeats of previous message suppressed: " + MESSAGE_FORMATTER.formatMessage(record)));
+		}
+	}
+
+	private void publishDropSummary(TokenBucket bucket, LogRecord record) {
+		if (record == null) {
+			return;
+		}
+		int dropped = bucket.takeDropped();
+		if (dropped > 0) {
+			target.publish(createSummary(record, dropped + " records suppressed by rate limit of " + rate + "/s"));
+		}
+	}
+
+	protected RepeatCounter getRepeatCounter(LogRecord record) {
+		MessageKey key = new MessageKey(record);
+		RepeatCounter counter = repeats.get(key);
+		if (counter == null) {
+			if (repeats.size() >= maxTrackedMessages) {
+				// Bound memory rather than track every message ever seen, reporting what is forgotten
+				for (Iterator<RepeatCounter> evicted = repeats.values().iterator(); evicted.hasNext(); ) {
+					RepeatCounter evictedCounter = evicted.next();
+					evicted.remove();
+					publishRepeatSummary(evictedCounter, evictedCounter.getFirst());
+				}
+			}
+			RepeatCounter created = new RepeatCounter(record);
+			counter = repeats.putIfAbsent(key, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	protected TokenBucket getTokenBucket(String loggerName) {
+		String key = loggerName == null ? "" : loggerName;
+		TokenBucket bucket = buckets.get(key);
+		if (bucket == null) {
+			TokenBucket created = new TokenBucket(rate, burst);
+			bucket = buckets.putIfAbsent(key, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	protected LogRecord createSummary(LogRecord record, String message) {
+		LogRecord summary = new LogRecord(record.getLevel(), message);
+		summary.setLoggerName(record.getLoggerName());
+		summary.setSourceClassName(record.getSourceClassName());
+		summary.setSourceMethodName(record.getSourceMethodName());
+		return summary;
+	}
+
+	private void configure() {
+		setLevel(Level.parse(getProperty("level", Level.ALL.getName())));
+
+		String filter = getProperty("filter", null);
+		if (filter != null) {
+			setFilter((Filter) newInstance(filter));
+		}
+		String formatter = getProperty("formatter", null);
+		if (formatter != null) {
+			target.setFormatter((Formatter) newInstance(formatter));
+		}
+
+		setRate(Double.parseDouble(getProperty("rate", String.valueOf(DEFAULT_RATE))));
+		setBurst(Double.parseDouble(getProperty("burst", String.valueOf(rate))));
+		setSummaryInterval(Long.parseLong(getProperty("summaryInterval", String.valueOf(DEFAULT_SUMMARY_INTERVAL))));
+		setMaxTrackedMessages(Integer.parseInt(getProperty("maxTrackedMessages", String.valueOf(DEFAULT_MAX_TRACKED_MESSAGES))));
+	}
+
+	private static String getProperty(String name, String defaultValue) {
+		String value = LogManager.getLogManager().getProperty(RateLimitingHandler.class.getName() + "." + name);
+		return value == null ? defaultValue : value.trim();
+	}
+
+	private static Handler createHandler(String className) {
+		return (Handler) newInstance(className);
+	}
+
+	private static Object newInstance(String className) {
+		try {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			if (loader == null) {
+				loader = ClassLoader.getSystemClassLoader();
+			}
+			return Class.forName(className, true, loader).newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot create " + className + ": " + e.getMessage(), e);
+		}
+	}
+
+	// Setter + getter methods
+	/**
+	 * Wrapped handler
+	 */
+	public Handler getTarget() {
+		return target;
+	}
+
+	/**
+	 * Records per second each logger may publish.  Applies to loggers first seen afterwards.
+	 */
+	public void setRate(double rate) {
+		if (rate <= 0) {
+			throw new IllegalArgumentException("rate must be positive, got: " + rate);
+		}
+		this.rate = rate;
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * Records each logger may publish in a single burst.  Applies to loggers first seen afterwards.
+	 */
+	public void setBurst(double burst) {
+		if (burst < 1) {
+			throw new IllegalArgumentException("burst must be at least 1, got: " + burst);
+		}
+		this.burst = burst;
+	}
+
+	public double getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Milliseconds during which identical messages are collapsed.
+	 */
+	public void setSummaryInterval(long summaryInterval) {
+		this.summaryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(summaryInterval);
+	}
+
+	public long getSummaryInterval() {
+		return TimeUnit.NANOSECONDS.toMillis(summaryIntervalNanos);
+	}
+
+	/**
+	 * Distinct messages tracked for de-duplication before counters are reset.
+	 */
+	public void setMaxTrackedMessages(int maxTrackedMessages) {
+		this.maxTrackedMessages = maxTrackedMessages;
+	}
+
+	public int getMaxTrackedMessages() {
+		return maxTrackedMessages;
+	}
+
+	@Override
+	public void setErrorManager(ErrorManager em) {
+		super.setErrorManager(em);
+		target.setErrorManager(em);
+	}
+
+	// Inner classes
+	/**
+	 * Token bucket, implemented as a virtual scheduling clock so that
+	 * acquiring is a single compare-and-set.
+	 */
+	protected static class TokenBucket {
+		private final long intervalNanos;
+		private final long toleranceNanos;
+		private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+		private final AtomicInteger dropped = new AtomicInteger();
+		private volatile LogRecord lastDropped;
+
+		public TokenBucket(double rate, double burst) {
+			this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+			this.toleranceNanos = (long) (intervalNanos * burst);
+		}
+
+		public boolean tryAcquire(long now) {
+			while (true) {
+				long arrival = theoreticalArrival.get();
+				long next = (arrival == Long.MIN_VALUE || arrival - now < 0 ? now : arrival) + intervalNanos;
+				if (next - now > toleranceNanos) {
+					dropped.incrementAndGet();
+					return false;
+				}
+				if (theoreticalArrival.compareAndSet(arrival, next)) {
+					return true;
+				}
+			}
+		}
+
+		public int takeDropped() {
+			return dropped.get() == 0 ? 0 : dropped.getAndSet(0);
+		}
+
+		/**
+		 * Most recently dropped record, used to describe dropped records in summaries.
+		 */
+		public LogRecord getLastDropped() {
+			return lastDropped;
+		}
+
+		public void setLastDropped(LogRecord lastDropped) {
+			this.lastDropped = lastDropped;
+		}
+	}
+
+	/**
+	 * Counts identical records suppressed in the current interval.
+	 */
+	protected static class RepeatCounter {
+		private final AtomicLong windowStart = new AtomicLong(Long.MIN_VALUE);
+		private final AtomicInteger suppressed = new AtomicInteger();
+		private final LogRecord first;
+
+		public RepeatCounter(LogRecord first) {
+			this.first = first;
+		}
+
+		public boolean tryPublish(long now, long intervalNanos) {
+			long start = windowStart.get();
+			if ((start == Long.MIN_VALUE || now - start >= intervalNanos)
+					&& windowStart.compareAndSet(start, now)) {
+				return true;
+			}
+			suppressed.incrementAndGet();
+			return false;
+		}
+
+		public int takeSuppressed() {
+			return suppressed.get() == 0 ? 0 : suppressed.getAndSet(0);
+		}
+
+		/**
+		 * First record of the message, used to describe repeats in summaries.
+		 */
+		public LogRecord getFirst() {
+			return first;
+		}
+	}
+
+	/**
+	 * Identity of a message: logger, level, unformatted message, its parameters,
+	 * and the class of the exception thrown, if any.
+	 */
+	protected static class MessageKey {
+		private final String loggerName;
+		private final Level level;
+		private final String message;
+		private final Object[] parameters;
+		private final Class<?> thrownClass;
+
+		public MessageKey(LogRecord record) {
+			this.loggerName = record.getLoggerName();
+			this.level = record.getLevel();
+			this.message = record.getMessage();
+			this.parameters = record.getParameters();
+			this.thrownClass = record.getThrown() == null ? null : record.getThrown().getClass();
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = level == null ? 0 : level.intValue();
+			hash = 31 * hash + (loggerName == null ? 0 : loggerName.hashCode());
+			hash = 31 * hash + (message == null ? 0 : message.hashCode());
+			hash = 31 * hash + Arrays.hashCode(parameters);
+			return 31 * hash + (thrownClass == null ? 0 : thrownClass.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof MessageKey)) {
+				return false;
+			}
+			MessageKey other = (MessageKey) obj;
+			return equal(loggerName, other.loggerName)
+				&& equal(level, other.level)
+				&& equal(message, other.message)
+				&& Arrays.equals(parameters, other.parameters)
+				&& equal(thrownClass, other.thrownClass);
+		}
+
+		private static boolean equal(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
@@ -1,15 +1,24 @@
 package net.flicken.util.spring;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.framework.AopConfigException;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.target.EmptyTargetSource;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
@@ -17,10 +26,14 @@ import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.ReflectionUtils.MethodCallback;
 
@@ -49,6 +62,19 @@ import org.springframework.util.ReflectionUtils.MethodCallback;
  * 
  * Optionally, beans can be filtered based on {@code beanClass} or {@code beanPatterns}. 
  * 
+ * When a context has many processors, declare a {@link RegistrationCoordinator} so that
+ * beans for all of them are registered in a single pass over the context.
+ * 
+ * With {@code lazy} set, beans not yet created are registered as proxies, which get the bean
+ * on their first method call and then delegate to it.  Only plugins that are actually used are
+ * created, provided they are declared {@code lazy-init} or as prototypes.  Proxies implement all
+ * interfaces of the bean, or, if {@code beanClass} is a class, subclass the bean's class with CGLIB.
+ * 
+ * If a {@link RegistrationBindings} table generated at build time is present at
+ * {@link #setBindings(Resource) bindings} and has a binding for this processor's bean name,
+ * the target and method are taken from it, without parsing the bean name or scanning the
+ * target class.  Bindings whose target class or method name no longer match are ignored.
+ * 
  * For instance, given a context with the following beans of the given types:
  * <code>
  *   <ul>
@@ -105,6 +131,9 @@ BeanFactoryAware
 	private Object target;
 	private Method targetMethod;
 	private String methodName;
+	private boolean coordinated = false;
+	private boolean lazy = false;
+	private Resource bindings = new ClassPathResource(RegistrationBindings.DEFAULT_BINDINGS_LOCATION);
 	
 	// Alternative way to specify target
 	private String beanName;
@@ -115,16 +144,24 @@ BeanFactoryAware
 	 * 
 	 * @param beanFactory bean context from which to get matching beans
 	 */
-	public void registerBeans(ListableBeanFactory beanFactory, Object obj) {
-		Map<String, ?> beans = gatherQualifiedBeans(beanFactory);
+	public void registerBeans(ListableBeanFactory beanFactory, final Object obj) {
 		if (log.isLoggable(Level.FINE))
 		{
-			log.fine("Registering beans to: " + obj + " with " + beans.values());
+			log.fine("Registering beans to: " + obj);
 		}
 		
-		for (Entry<String, ?> entry : beans.entrySet()) {
-			registerBean(obj, entry.getKey(), entry.getValue());
+		if (lazy) {
+			for (String name : gatherQualifiedBeanNames(beanFactory)) {
+				registerBean(obj, name, getLazyBean(beanFactory, name));
+			}
+			return;
 		}
+		doWithQualifiedBeans(beanFactory, new BeanCallback() {
+			public boolean doWith(String name, Object bean) {
+				registerBean(obj, name, bean);
+				return true;
+			}
+		});
 	}
 	
 	public void registerBeans(ListableBeanFactory beanFactory) {
@@ -132,7 +169,9 @@ BeanFactoryAware
 	}
 
 	public void afterPropertiesSet() throws Exception {
-		determineTargetAndMethodFromBeanName();
+		if (!determineTargetAndMethodFromBindings()) {
+			determineTargetAndMethodFromBeanName();
+		}
 		Assert.notNull(target, "target object must not be null");
 		determineMethodOrMethodName();
 		determineBeanClassIfNull();
@@ -140,7 +179,7 @@ BeanFactoryAware
 
 
 	public void onApplicationEvent(ApplicationEvent event) {
-		if (event instanceof ContextRefreshedEvent)
+		if (event instanceof ContextRefreshedEvent && !isCoordinated())
 		{
 			ContextRefreshedEvent refreshed = (ContextRefreshedEvent) event;
 			registerBeans(refreshed.getApplicationContext(), target);
@@ -153,6 +192,61 @@ BeanFactoryAware
 		ReflectionUtils.invokeMethod(targetMethod, obj, new Object[] { bean });
 	}
 
+	/**
+	 * Bean to register for {@code name} in lazy mode: the bean itself if already
+	 * created, otherwise a proxy which gets it on first use.
+	 */
+	protected Object getLazyBean(ListableBeanFactory beanFactory, String name) {
+		ConfigurableListableBeanFactory configurableBeanFactory = getConfigurableBeanFactory(beanFactory);
+		if (configurableBeanFactory != null && configurableBeanFactory.containsSingleton(name)) {
+			return beanFactory.getBean(name);
+		}
+		return createLazyProxy(beanFactory, name);
+	}
+
+	/**
+	 * Proxy which gets bean {@code name} on first use.  Interfaces are proxied with JDK proxies;
+	 * classes are subclassed with CGLIB, which runs the no-arg constructor of the bean class.
+	 * Classes which cannot be subclassed (final, or without a no-arg constructor) get the
+	 * bean itself instead.
+	 */
+	protected Object createLazyProxy(BeanFactory beanFactory, String name) {
+		Class<?> type = beanFactory.getType(name);
+		Class<?> proxiedType = type != null ? type : getBeanClass();
+		ProxyFactory proxyFactory = new ProxyFactory();
+		proxyFactory.setTargetSource(EmptyTargetSource.forClass(proxiedType));
+		proxyFactory.addAdvice(new LazyBeanInterceptor(beanFactory, name));
+		if (getBeanClass() != null && getBeanClass().isInterface()) {
+			proxyFactory.setInterfaces(type != null ? ClassUtils.getAllInterfacesForClass(type) : new Class<?>[] { getBeanClass() });
+		} else {
+			if (!isSubclassable(proxiedType)) {
+				log.info("Cannot proxy " + proxiedType + ", registering bean " + name + " eagerly");
+				return beanFactory.getBean(name);
+			}
+			proxyFactory.setProxyTargetClass(true);
+		}
+		try {
+			return proxyFactory.getProxy();
+		} catch (AopConfigException e) {
+			log.log(Level.INFO, "Cannot proxy bean " + name + ", registering it eagerly", e);
+			return beanFactory.getBean(name);
+		}
+	}
+
+	/**
+	 * Whether CGLIB can subclass {@code type}: not final, and with a non-private no-arg constructor.
+	 */
+	protected static boolean isSubclassable(Class<?> type) {
+		if (type == null || Modifier.isFinal(type.getModifiers())) {
+			return false;
+		}
+		try {
+			return !Modifier.isPrivate(type.getDeclaredConstructor().getModifiers());
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
 	protected void determineBeanClassIfNull() {
 		if (getBeanClass() == null)
 		{
@@ -161,6 +255,45 @@ BeanFactoryAware
 		}
 	}
 
+	/**
+	 * Takes target and method from the binding of this processor, if there is one that still matches.
+	 *
+	 * @return whether the binding was used
+	 */
+	protected boolean determineTargetAndMethodFromBindings() {
+		if (bindings == null || targetMethod != null) {
+			return false;
+		}
+		RegistrationBindings.Binding binding = loadBindings(bindings).getBinding(beanName);
+		if (binding == null || (methodName != null && !methodName.equals(binding.getMethodName()))) {
+			return false;
+		}
+		Object boundTarget = target != null ? target : beanFactory.getBean(binding.getTargetName());
+		Method method = binding.resolveMethod(boundTarget.getClass());
+		if (method == null) {
+			log.fine("Registration binding of '" + beanName + "' is stale, resolving method");
+			return false;
+		}
+		setTarget(boundTarget);
+		setMethodName(binding.getMethodName());
+		setTargetMethod(method);
+		return true;
+	}
+
+	private static RegistrationBindings loadBindings(Resource resource) {
+		RegistrationBindings loaded = loadedBindings.get(resource);
+		if (loaded == null) {
+			try {
+				loaded = RegistrationBindings.load(resource);
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Cannot load registration bindings from " + resource + ", resolving methods", e);
+				loaded = new RegistrationBindings();
+			}
+			loadedBindings.put(resource, loaded);
+		}
+		return loaded;
+	}
+
 	protected void determineTargetAndMethodFromBeanName() {
 		Matcher matcher = BEAN_METHOD_SUFFIX_PATTERN.matcher(beanName);
 		
@@ -274,6 +407,42 @@ BeanFactoryAware
 		return target;
 	}
 
+	/**
+	 * Whether beans are registered by a {@link RegistrationCoordinator} on refresh,
+	 * instead of by this processor.
+	 */
+	public void setCoordinated(boolean coordinated) {
+		this.coordinated = coordinated;
+	}
+
+	public boolean isCoordinated() {
+		return coordinated;
+	}
+
+	/**
+	 * Whether to register lazy proxies for beans not yet created, instead of creating them.
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * (Optional) Location of {@link RegistrationBindings} generated at build time.
+	 * Defaults to {@link RegistrationBindings#DEFAULT_BINDINGS_LOCATION} on the classpath,
+	 * and is ignored if it does not exist.  Set to {@code null} to always resolve at runtime.
+	 */
+	public void setBindings(Resource bindings) {
+		this.bindings = bindings;
+	}
+
+	public Resource getBindings() {
+		return bindings;
+	}
+
 	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
 		this.beanFactory = beanFactory;
 	}
@@ -299,6 +468,50 @@ BeanFactoryAware
 		}
 	}
 
+	/**
+	 * Gets the bean on its first method call, then calls it without locking.
+	 * {@code toString()} does not get the bean, so that logging a registry does
+	 * not create all of its plugins, and {@code equals()} and {@code hashCode()}
+	 * use the identity of the proxy, so that it can be put in sets and maps.
+	 */
+	public static class LazyBeanInterceptor implements MethodInterceptor {
+		private final BeanFactory beanFactory;
+		private final String beanName;
+		private volatile Object bean;
+
+		public LazyBeanInterceptor(BeanFactory beanFactory, String beanName) {
+			this.beanFactory = beanFactory;
+			this.beanName = beanName;
+		}
+
+		public Object invoke(MethodInvocation invocation) throws Throwable {
+			Method method = invocation.getMethod();
+			if (AopUtils.isEqualsMethod(method)) {
+				return getProxy(invocation) == invocation.getArguments()[0];
+			}
+			if (AopUtils.isHashCodeMethod(method)) {
+				return System.identityHashCode(getProxy(invocation));
+			}
+			Object target = bean;
+			if (target == null) {
+				if (AopUtils.isToStringMethod(method)) {
+					return "Lazy proxy for bean '" + beanName + "'";
+				}
+				synchronized (this) {
+					target = bean;
+					if (target == null) {
+						target = bean = beanFactory.getBean(beanName);
+					}
+				}
+			}
+			return AopUtils.invokeJoinpointUsingReflection(target, method, invocation.getArguments());
+		}
+
+		private static Object getProxy(MethodInvocation invocation) {
+			return ((ProxyMethodInvocation) invocation).getProxy();
+		}
+	}
+
 	/**
 	 * Only matches methods with the given name. 
 	 */
@@ -318,5 +531,6 @@ BeanFactoryAware
 		}
 	}
 	
+	private static final Map<Resource, RegistrationBindings> loadedBindings = new ConcurrentHashMap<Resource, RegistrationBindings>();
 	private static Logger log = Logger.getLogger(RegisteringBeanPostProcessor.class.getName());
 }
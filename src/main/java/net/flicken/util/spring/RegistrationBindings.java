@@ -0,0 +1,274 @@
+package net.flicken.util.spring;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Table of {@link RegisteringBeanPostProcessor} bindings, resolved at build time, so that at
+ * startup a processor neither parses its bean name nor scans the target class for its method.
+ *
+ * For each processor, by bean name, the table holds the target bean name, the target class
+ * and the signature of the registration method.  At runtime, a processor whose target class
+ * and method name still match looks its method up directly by signature; otherwise it falls
+ * back to resolving the binding as before.
+ *
+ * Generated during the build, as with {@link BeanTypeIndex}, e.g. with the
+ * <code>exec-maven-plugin</code> in the <code>process-classes</code> phase:
+ * <code><pre>
+ *  java net.flicken.util.spring.RegistrationBindings target/classes/META-INF/spring-utils/registration-bindings.properties \
+ *       com/example/context.xml com/example/other-context.xml
+ * </pre></code>
+ * Each argument after the output file is a comma separated list of classpath
+ * locations forming one context.  Processors whose target is not a bean reference are skipped.
+ *
+ * @see RegisteringBeanPostProcessor#setBindings(Resource)
+ * @author broberts
+ */
+public class RegistrationBindings {
+	public static final String DEFAULT_BINDINGS_LOCATION = "META-INF/spring-utils/registration-bindings.properties";
+
+	static final String TARGET_KEY = "target";
+	static final String TARGET_CLASS_KEY = "targetClass";
+	static final String METHOD_KEY = "method";
+
+	/** Bindings by processor bean name */
+	private final Map<String, Binding> bindings = new LinkedHashMap<String, Binding>();
+
+	public RegistrationBindings() {
+	}
+
+	/**
+	 * Binding of the processor named {@code beanName}, or {@code null} if none.
+	 */
+	public Binding getBinding(String beanName) {
+		return beanName == null ? null : bindings.get(beanName);
+	}
+
+	/**
+	 * Whether the table contains any bindings.
+	 */
+	public boolean isEmpty() {
+		return bindings.isEmpty();
+	}
+
+	/**
+	 * Resolves the bindings of all processors defined in {@code beanFactory}, without creating them.
+	 */
+	public void add(ConfigurableListableBeanFactory beanFactory) {
+		for (String name : beanFactory.getBeanNamesForType(RegisteringBeanPostProcessor.class, true, false)) {
+			Binding binding = resolve(beanFactory, name);
+			if (binding != null) {
+				bindings.put(name, binding);
+			}
+		}
+	}
+
+	private Binding resolve(ConfigurableListableBeanFactory beanFactory, String name) {
+		BeanDefinition definition = beanFactory.getMergedBeanDefinition(name);
+		MutablePropertyValues properties = definition.getPropertyValues();
+		String targetName = null;
+		String methodName = stringValue(properties.getPropertyValue("methodName"));
+		PropertyValue target = properties.getPropertyValue("target");
+		if (target != null) {
+			if (!(target.getValue() instanceof RuntimeBeanReference)) {
+				log.info("Target of '" + name + "' is not a bean reference, not binding");
+				return null;
+			}
+			targetName = ((RuntimeBeanReference) target.getValue()).getBeanName();
+		}
+		if (targetName == null || methodName == null) {
+			Matcher matcher = RegisteringBeanPostProcessor.BEAN_METHOD_SUFFIX_PATTERN.matcher(name);
+			if (!matcher.matches()) {
+				log.info("Cannot split method from name of '" + name + "', not binding");
+				return null;
+			}
+			targetName = targetName != null ? targetName : matcher.group(1);
+			methodName = methodName != null ? methodName : matcher.group(2);
+		}
+
+		Class<?> targetClass = beanFactory.getType(targetName);
+		if (targetClass == null) {
+			log.info("Cannot determine type of target '" + targetName + "' of '" + name + "', not binding");
+			return null;
+		}
+		// Same discovery as RegisteringBeanPostProcessor#findMatchingMethod
+		RegisteringBeanPostProcessor.CollectingMethodCallback methods = new RegisteringBeanPostProcessor.CollectingMethodCallback();
+		ReflectionUtils.doWithMethods(targetClass, methods, new RegisteringBeanPostProcessor.NameMethodAndParameterSizeFilter(methodName, 1));
+		if (methods.getMethods().isEmpty()) {
+			log.info("No method '" + methodName + "' in " + targetClass.getName() + " for '" + name + "', not binding");
+			return null;
+		}
+		Method method = methods.getMethods().get(0);
+		return new Binding(targetName, targetClass.getName(), method.getDeclaringClass().getName(),
+				methodName, method.getParameterTypes()[0].getName());
+	}
+
+	private static String stringValue(PropertyValue property) {
+		if (property == null) {
+			return null;
+		}
+		Object value = property.getValue();
+		return value instanceof TypedStringValue ? ((TypedStringValue) value).getValue() : (String) value;
+	}
+
+	/**
+	 * Loads table from {@code resource}, returning an empty table if the resource does not exist.
+	 */
+	public static RegistrationBindings load(Resource resource) throws IOException {
+		RegistrationBindings table = new RegistrationBindings();
+		if (!resource.exists()) {
+			return table;
+		}
+
+		Properties properties = new Properties();
+		InputStream in = resource.getInputStream();
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+
+		for (Object key : properties.keySet()) {
+			String name = (String) key;
+			if (!name.endsWith("." + TARGET_KEY)) {
+				continue;
+			}
+			String beanName = name.substring(0, name.length() - TARGET_KEY.length() - 1);
+			String targetClass = properties.getProperty(beanName + "." + TARGET_CLASS_KEY);
+			String[] method = StringUtils.tokenizeToStringArray(properties.getProperty(beanName + "." + METHOD_KEY, ""), "#()");
+			if (targetClass == null || method.length != 3) {
+				log.warning("Ignoring incomplete registration binding of '" + beanName + "'");
+				continue;
+			}
+			table.bindings.put(beanName, new Binding(properties.getProperty(name), targetClass, method[0], method[1], method[2]));
+		}
+		return table;
+	}
+
+	/**
+	 * Writes table in the format read by {@link #load(Resource)}.
+	 */
+	public void write(OutputStream out) throws IOException {
+		Properties properties = new Properties();
+		for (Entry<String, Binding> entry : bindings.entrySet()) {
+			Binding binding = entry.getValue();
+			properties.put(entry.getKey() + "." + TARGET_KEY, binding.targetName);
+			properties.put(entry.getKey() + "." + TARGET_CLASS_KEY, binding.targetClassName);
+			properties.put(entry.getKey() + "." + METHOD_KEY,
+					binding.declaringClassName + "#" + binding.methodName + "(" + binding.parameterTypeName + ")");
+		}
+		properties.store(out, "Registration bindings, generated by " + RegistrationBindings.class.getName());
+	}
+
+	/**
+	 * Generates a bindings file.
+	 *
+	 * @param args output file, followed by one comma separated list of classpath context locations per context
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: " + RegistrationBindings.class.getName() + " <output file> <context locations>...");
+			System.exit(1);
+		}
+
+		File output = new File(args[0]);
+		RegistrationBindings table = load(new FileSystemResource(output));
+		for (int i = 1; i < args.length; i++) {
+			table.add(BeanTypeIndex.loadBeanDefinitions(StringUtils.commaDelimitedListToStringArray(args[i])));
+		}
+
+		if (output.getParentFile() != null) {
+			output.getParentFile().mkdirs();
+		}
+		OutputStream out = new FileOutputStream(output);
+		try {
+			table.write(out);
+		} finally {
+			out.close();
+		}
+		log.info("Wrote " + table.bindings.size() + " registration bindings to " + output);
+	}
+
+	// Inner classes
+	/**
+	 * Resolved binding of one processor.
+	 */
+	public static class Binding {
+		private final String targetName;
+		private final String targetClassName;
+		private final String declaringClassName;
+		private final String methodName;
+		private final String parameterTypeName;
+
+		Binding(String targetName, String targetClassName, String declaringClassName, String methodName, String parameterTypeName) {
+			this.targetName = targetName;
+			this.targetClassName = targetClassName;
+			this.declaringClassName = declaringClassName;
+			this.methodName = methodName;
+			this.parameterTypeName = parameterTypeName;
+		}
+
+		/**
+		 * Registration method of {@code targetClass}, looked up by signature.
+		 *
+		 * @return method, or {@code null} if {@code targetClass} is not the class bound at build time,
+		 * or no longer has the method
+		 */
+		public Method resolveMethod(Class<?> targetClass) {
+			if (!targetClass.getName().equals(targetClassName)) {
+				return null;
+			}
+			for (Class<?> clazz = targetClass; clazz != null; clazz = clazz.getSuperclass()) {
+				if (clazz.getName().equals(declaringClassName)) {
+					try {
+						Class<?> parameterType = ClassUtils.forName(parameterTypeName, targetClass.getClassLoader());
+						Method method = clazz.getDeclaredMethod(methodName, parameterType);
+						ReflectionUtils.makeAccessible(method);
+						return method;
+					} catch (ClassNotFoundException e) {
+						return null;
+					} catch (NoSuchMethodException e) {
+						return null;
+					}
+				}
+			}
+			return null;
+		}
+
+		public String getTargetName() {
+			return targetName;
+		}
+
+		public String getTargetClassName() {
+			return targetClassName;
+		}
+
+		public String getMethodName() {
+			return methodName;
+		}
+	}
+
+	private static Logger log = Logger.getLogger(RegistrationBindings.class.getName());
+}
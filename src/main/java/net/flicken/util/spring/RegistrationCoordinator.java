@@ -0,0 +1,146 @@
+package net.flicken.util.spring;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * Registers beans for all {@link RegisteringBeanPostProcessor}s in a context with
+ * a single pass over the context, instead of one pass per processor.
+ *
+ * Each bean's type is determined once and the bean is handed to every processor
+ * whose {@code beanClass}, {@code beanPatterns} and {@code beanDefinitionFilters} match it.  Each processor still
+ * receives its beans in the same order as it would on its own.
+ *
+ * Simply declare the coordinator in the context:
+ * <code><pre>
+ *  &lt;bean class="net.flicken.util.spring.RegistrationCoordinator"/&gt;
+ * </pre></code>
+ *
+ * Processors in the context are marked as {@link RegisteringBeanPostProcessor#setCoordinated(boolean) coordinated}
+ * before they are created, so that they do not also register beans themselves.  Only refreshes
+ * of the coordinator's own context are handled, as child contexts have their own coordinators.
+ *
+ * @see RegisteringBeanPostProcessor
+ * @author broberts
+ */
+public class RegistrationCoordinator implements BeanFactoryPostProcessor, ApplicationListener, ApplicationContextAware {
+	public static final String COORDINATED_PROPERTY = "coordinated";
+
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+			throws BeansException {
+		for (String name : beanFactory.getBeanNamesForType(RegisteringBeanPostProcessor.class, true, false)) {
+			if (beanFactory.containsBeanDefinition(name)) {
+				BeanDefinition definition = beanFactory.getBeanDefinition(name);
+				definition.getPropertyValues().addPropertyValue(COORDINATED_PROPERTY, Boolean.TRUE);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void onApplicationEvent(ApplicationEvent event) {
+		if (event instanceof ContextRefreshedEvent)
+		{
+			ApplicationContext context = ((ContextRefreshedEvent) event).getApplicationContext();
+			if (applicationContext != null && context != applicationContext) {
+				// Refresh of a child context
+				return;
+			}
+			List<RegisteringBeanPostProcessor> processors = new ArrayList<RegisteringBeanPostProcessor>();
+			for (RegisteringBeanPostProcessor processor : (Collection<RegisteringBeanPostProcessor>) context.getBeansOfType(RegisteringBeanPostProcessor.class).values()) {
+				if (processor.isCoordinated()) {
+					processors.add(processor);
+				}
+			}
+			registerBeans(context, processors);
+		}
+	}
+
+	/**
+	 * Registers all matching beans in {@code beanFactory} with each of the {@code processors}, in a single pass.
+	 *
+	 * @param beanFactory bean context from which to get matching beans
+	 * @param processors processors whose targets beans are registered with
+	 */
+	public void registerBeans(ListableBeanFactory beanFactory, List<RegisteringBeanPostProcessor> processors) {
+		log.info("Registering beans for " + processors.size() + " processors");
+
+		List<RegisteringBeanPostProcessor> matching = new ArrayList<RegisteringBeanPostProcessor>(processors.size());
+		for (String name : allBeans.gatherQualifiedBeanNames(beanFactory)) {
+			Class<?> type = beanFactory.getType(name);
+			matching.clear();
+			for (RegisteringBeanPostProcessor processor : processors) {
+				if (processor.matchesBeanPattern(name) && matchesBeanClass(beanFactory, name, type, processor.getBeanClass())
+						&& matchesBeanDefinition(beanFactory, name, processor)) {
+					matching.add(processor);
+				}
+			}
+			if (matching.isEmpty()) {
+				continue;
+			}
+
+			Object bean = null;
+			boolean inCreation = false;
+			for (RegisteringBeanPostProcessor processor : matching) {
+				if (processor.isLazy()) {
+					processor.registerBean(processor.getTarget(), name, processor.getLazyBean(beanFactory, name));
+					continue;
+				}
+				if (bean == null && !inCreation) {
+					bean = allBeans.getQualifiedBean(beanFactory, name);
+					inCreation = bean == null;
+				}
+				// A bean currently in creation is skipped by each processor, as on its own, but lazy ones still get a proxy
+				if (bean != null) {
+					processor.registerBean(processor.getTarget(), name, bean);
+				}
+			}
+		}
+	}
+
+	protected boolean matchesBeanClass(ListableBeanFactory beanFactory, String name, Class<?> type, Class<?> beanClass) {
+		if (beanClass == null) {
+			return true;
+		}
+		return type != null ? beanClass.isAssignableFrom(type) : beanFactory.isTypeMatch(name, beanClass);
+	}
+
+	/**
+	 * Whether the definition of {@code name}, in {@code beanFactory} or the ancestor defining it,
+	 * matches the definition filters of {@code processor}.
+	 */
+	protected boolean matchesBeanDefinition(ListableBeanFactory beanFactory, String name, RegisteringBeanPostProcessor processor) {
+		if (processor.getBeanDefinitionFilters().length == 0) {
+			return true;
+		}
+		ConfigurableListableBeanFactory configurable = BeanFilteringSupport.getConfigurableBeanFactory(beanFactory);
+		while (configurable != null && !configurable.containsBeanDefinition(name)) {
+			BeanFactory parent = configurable.getParentBeanFactory();
+			configurable = parent instanceof ListableBeanFactory ? BeanFilteringSupport.getConfigurableBeanFactory((ListableBeanFactory) parent) : null;
+		}
+		return configurable != null && processor.matchesBeanDefinition(configurable, name);
+	}
+
+	// Setter + getter methods
+	public void setApplicationContext(ApplicationContext applicationContext) {
+		this.applicationContext = applicationContext;
+	}
+
+	private ApplicationContext applicationContext;
+	private final BeanFilteringSupport allBeans = new BeanFilteringSupport();
+
+	private static Logger log = Logger.getLogger(RegistrationCoordinator.class.getName());
+}
@@ -0,0 +1,22 @@
+package net.flicken.util.spring;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Combines the results of calling the same method on each bean behind a composite proxy
+ * into the single result of the proxy.
+ *
+ * @see InstanceCollectingFactoryBean#setComposite(boolean)
+ * @see ResultAggregators
+ * @author broberts
+ */
+public interface ResultAggregator {
+	/**
+	 * @param method method called on the composite
+	 * @param results result of each bean, in collection order
+	 * @return result of the composite, assignable to the return type of {@code method};
+	 * 	must not be {@code null} if that is a primitive other than {@code void}
+	 */
+	Object aggregate(Method method, List<Object> results);
+}
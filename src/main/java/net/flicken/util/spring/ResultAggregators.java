@@ -0,0 +1,129 @@
+package net.flicken.util.spring;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Common {@link ResultAggregator}s, which can be declared as inner beans:
+ * <code><pre>
+ * 	&lt;bean id="validator" class="net.flicken.util.spring.InstanceCollectingFactoryBean"&gt;
+ *		&lt;property name="beanClass" value="com.example.Validator"/&gt;
+ *		&lt;property name="composite" value="true"/&gt;
+ *		&lt;property name="resultAggregator"&gt;
+ *			&lt;bean class="net.flicken.util.spring.ResultAggregators$AllTrue"/&gt;
+ *		&lt;/property&gt;
+ * 	&lt;/bean&gt;
+ * </pre></code>
+ *
+ * @author broberts
+ */
+public abstract class ResultAggregators {
+
+	private ResultAggregators() {
+	}
+
+	/**
+	 * Aggregates by return type: {@code null} for {@code void}, {@link AnyTrue} for
+	 * {@code boolean}, {@link Concat} for lists and collections, and {@link First}
+	 * otherwise.  Other primitives are zero if there are no results.
+	 */
+	public static class ByReturnType implements ResultAggregator {
+		private static final ResultAggregator ANY_TRUE = new AnyTrue();
+		private static final ResultAggregator CONCAT = new Concat();
+		private static final ResultAggregator FIRST = new First();
+
+		public Object aggregate(Method method, List<Object> results) {
+			Class<?> type = method.getReturnType();
+			if (type == void.class) {
+				return null;
+			}
+			if (type == boolean.class || type == Boolean.class) {
+				return ANY_TRUE.aggregate(method, results);
+			}
+			if (Collection.class.isAssignableFrom(type) && type.isAssignableFrom(ArrayList.class)) {
+				return CONCAT.aggregate(method, results);
+			}
+			Object first = FIRST.aggregate(method, results);
+			if (first == null && type.isPrimitive()) {
+				return zero(type);
+			}
+			return first;
+		}
+
+		private static Object zero(Class<?> primitiveType) {
+			if (primitiveType == char.class) {
+				return Character.valueOf((char) 0);
+			}
+			if (primitiveType == byte.class) {
+				return Byte.valueOf((byte) 0);
+			}
+			if (primitiveType == short.class) {
+				return Short.valueOf((short) 0);
+			}
+			if (primitiveType == int.class) {
+				return Integer.valueOf(0);
+			}
+			if (primitiveType == long.class) {
+				return Long.valueOf(0);
+			}
+			if (primitiveType == float.class) {
+				return Float.valueOf(0);
+			}
+			return Double.valueOf(0);
+		}
+	}
+
+	/**
+	 * {@code true} if any result is {@code true}.
+	 */
+	public static class AnyTrue implements ResultAggregator {
+		public Object aggregate(Method method, List<Object> results) {
+			return results.contains(Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * {@code true} if every result is {@code true}, including when there are none.
+	 */
+	public static class AllTrue implements ResultAggregator {
+		public Object aggregate(Method method, List<Object> results) {
+			for (Object result : results) {
+				if (!Boolean.TRUE.equals(result)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * All elements of the collection results in order, as a list.  {@code null} results are skipped.
+	 */
+	public static class Concat implements ResultAggregator {
+		public Object aggregate(Method method, List<Object> results) {
+			List<Object> all = new ArrayList<Object>();
+			for (Object result : results) {
+				if (result != null) {
+					all.addAll((Collection<?>) result);
+				}
+			}
+			return all;
+		}
+	}
+
+	/**
+	 * First non-{@code null} result, or {@code null} if none.
+	 */
+	public static class First implements ResultAggregator {
+		public Object aggregate(Method method, List<Object> results) {
+			for (Object result : results) {
+				if (result != null) {
+					return result;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package net.flicken.util.spring;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Collection which answers "which elements are instances of this type?" with a single
+ * cached lookup, instead of a scan with {@code instanceof} over every element.
+ *
+ * Intended as the {@code collectionType} of an {@link InstanceCollectingFactoryBean},
+ * for plugins that are dispatched on by type:
+ * <code><pre>
+ * 	&lt;bean id="handlers" class="net.flicken.util.spring.InstanceCollectingFactoryBean"&gt;
+ *		&lt;property name="beanClass" value="com.example.Handler"/&gt;
+ *		&lt;property name="collectionType" value="net.flicken.util.spring.TypeIndexedCollection"/&gt;
+ * 	&lt;/bean&gt;
+ * </pre></code>
+ * and then, per request, {@code handlers.getAllOfType(OrderHandler.class)}.
+ *
+ * Elements are held in a {@link PluginRegistry}, so iteration and lookups take no
+ * locks, and the results of each lookup are memoized per type until the collection
+ * is next modified.  Lookups return unmodifiable snapshots.  Iterators also iterate over
+ * a snapshot, but {@link Iterator#remove()} removes the element from the collection, so
+ * {@code clear()}, {@code removeAll()} and {@code retainAll()} work as usual.  Null elements
+ * are not permitted.
+ *
+ * @see PluginRegistry
+ * @author broberts
+ */
+public class TypeIndexedCollection<T> extends AbstractCollection<T> {
+	private final PluginRegistry<T> registry = new PluginRegistry<T>();
+
+	/**
+	 * Elements assignable to {@code type}, in order of addition.
+	 */
+	public <S> List<S> getAllOfType(Class<S> type) {
+		return registry.getAllOfType(type);
+	}
+
+	/**
+	 * First element assignable to {@code type}, or {@code null} if none.
+	 */
+	public <S> S getFirstOfType(Class<S> type) {
+		return registry.getFirstOfType(type);
+	}
+
+	@Override
+	public boolean add(T element) {
+		registry.register(element);
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object element) {
+		return registry.unregister((T) element);
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		final Iterator<T> snapshot = registry.iterator();
+		return new Iterator<T>() {
+			private T last;
+
+			public boolean hasNext() {
+				return snapshot.hasNext();
+			}
+
+			public T next() {
+				last = snapshot.next();
+				return last;
+			}
+
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException("next() has not been called, or remove() already has");
+				}
+				registry.unregister(last);
+				last = null;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return registry.size();
+	}
+}
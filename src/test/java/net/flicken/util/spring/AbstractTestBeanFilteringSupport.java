@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
@@ -17,6 +18,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.test.context.ContextConfiguration;
@@ -81,6 +85,31 @@ public abstract class AbstractTestBeanFilteringSupport implements ApplicationCon
 		assertClassResults(ExtraPlugin.class, extra);
 	}
 	
+	@Test public void doWithQualifiedBeansStopsEarly()
+	{
+		// Prototypes, so that every bean reached is created by the call
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		for (String name : new String[] { "counted1", "counted2", "counted3" }) {
+			RootBeanDefinition definition = new RootBeanDefinition(CountedPlugin.class);
+			definition.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+			beanFactory.registerBeanDefinition(name, definition);
+		}
+		CountedPlugin.INSTANCES.set(0);
+
+		final List<Object> visited = new ArrayList<Object>();
+		getBeanFilterer().setBeanClass(Plugin.class);
+		getBeanFilterer().setBeanPattern("*");
+		getBeanFilterer().doWithQualifiedBeans(beanFactory, new BeanFilteringSupport.BeanCallback() {
+			public boolean doWith(String name, Object bean) {
+				visited.add(bean);
+				return false;
+			}
+		});
+		
+		assertThat(visited.size(), is(1));
+		assertThat(CountedPlugin.INSTANCES.get(), is(1));
+	}
+	
 	protected void assertClassResults(Class<?> clazz, Plugin... plugins) {
 		getBeanFilterer().setBeanClass(clazz);
 		getBeanFilterer().setBeanPattern("*");
@@ -166,4 +195,13 @@ public abstract class AbstractTestBeanFilteringSupport implements ApplicationCon
 	
 	public static class ExtraPlugin extends AbstractExtraPlugin1
 	{	}
+
+	public static class CountedPlugin extends AbstractPlugin
+	{
+		static final AtomicInteger INSTANCES = new AtomicInteger();
+
+		public CountedPlugin() {
+			INSTANCES.incrementAndGet();
+		}
+	}
 }
@@ -0,0 +1,128 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Registry;
+
+import net.flicken.util.spring.TestPreserveBeanTargetClass.Acceptor;
+import net.flicken.util.spring.TestPreserveBeanTargetClass.MyClass;
+import net.flicken.util.spring.TestPreserveBeanTargetClass.MyLogger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+public class BeanDefinitionCacheTest {
+	static final String REMOVER_CONTEXT = "net/flicken/util/spring/BeanRemoverTest-context.xml";
+	static final String AOP_CONTEXT = "net/flicken/util/spring/TestPreserveBeanTargetClass-context.xml";
+	static final String COORDINATOR_CONTEXT = "net/flicken/util/spring/TestRegistrationCoordinator-context.xml";
+	static final String POST_PROCESSOR_CONTEXT = "net/flicken/util/spring/BeanDefinitionCacheTest-context.xml";
+	static final String PLACEHOLDER_CONTEXT = "net/flicken/util/spring/BeanDefinitionCacheTest-placeholder-context.xml";
+
+	File cacheFile;
+
+	@Before public void createCacheFile() throws Exception {
+		cacheFile = File.createTempFile("bean-definitions", ".cache");
+		cacheFile.delete();
+	}
+
+	@After public void deleteCacheFile() {
+		cacheFile.delete();
+	}
+
+	@Test public void cachedDefinitionsSkipPostProcessors() {
+		BeanRemoverTest.REMOVE.set(Boolean.TRUE);
+		CachingClassPathXmlApplicationContext context = new CachingClassPathXmlApplicationContext(cacheFile, REMOVER_CONTEXT);
+		assertThat(context.isLoadedFromCache(), equalTo(false));
+		assertThat(context.containsBean("bean-hidden"), equalTo(false));
+		assertThat(cacheFile.isFile(), equalTo(true));
+		context.close();
+
+		BeanRemoverTest.REMOVE.set(Boolean.FALSE);
+		context = new CachingClassPathXmlApplicationContext(cacheFile, REMOVER_CONTEXT);
+		assertThat(context.isLoadedFromCache(), equalTo(true));
+		assertThat(context.containsBean("bean-hidden"), equalTo(false));
+		context.close();
+	}
+
+	@Test public void postProcessorsAreKeptButOnlyReappliedOnesInvoked() {
+		String[] locations = { COORDINATOR_CONTEXT, POST_PROCESSOR_CONTEXT };
+		CountingPostProcessor.COUNT.set(0);
+		CountingReappliedPostProcessor.COUNT.set(0);
+		new CachingClassPathXmlApplicationContext(cacheFile, locations).close();
+		assertThat(CountingPostProcessor.COUNT.get(), equalTo(1));
+		assertThat(CountingReappliedPostProcessor.COUNT.get(), equalTo(1));
+
+		CachingClassPathXmlApplicationContext context = new CachingClassPathXmlApplicationContext(cacheFile, locations);
+		assertThat(context.isLoadedFromCache(), equalTo(true));
+		assertThat(context.getBeanNamesForType(CountingPostProcessor.class).length, equalTo(1));
+		assertThat(CountingPostProcessor.COUNT.get(), equalTo(1));
+		assertThat(CountingReappliedPostProcessor.COUNT.get(), equalTo(2));
+		context.close();
+	}
+
+	@Test public void cachedCoordinatorStillRegisters() {
+		new CachingClassPathXmlApplicationContext(cacheFile, COORDINATOR_CONTEXT).close();
+
+		CachingClassPathXmlApplicationContext context = new CachingClassPathXmlApplicationContext(cacheFile, COORDINATOR_CONTEXT);
+		assertThat(context.isLoadedFromCache(), equalTo(true));
+		assertThat(context.getBeanNamesForType(RegistrationCoordinator.class).length, equalTo(1));
+		assertThat(((Registry) context.getBean("registry")).getPlugins(),
+				equalTo(Arrays.<Plugin>asList((Plugin) context.getBean("plugin1"), (Plugin) context.getBean("plugin2"))));
+		context.close();
+	}
+
+	@Test public void contextsWithPlaceholdersAreNotCached() {
+		CachingClassPathXmlApplicationContext context = new CachingClassPathXmlApplicationContext(cacheFile, PLACEHOLDER_CONTEXT);
+		assertThat(context.getBean("greeting"), equalTo((Object) "hello"));
+		context.close();
+		assertThat(cacheFile.exists(), equalTo(false));
+	}
+
+	@Test public void cacheForOtherResourcesIsIgnored() {
+		BeanRemoverTest.REMOVE.set(Boolean.FALSE);
+		new CachingClassPathXmlApplicationContext(cacheFile, REMOVER_CONTEXT).close();
+
+		CachingClassPathXmlApplicationContext context = new CachingClassPathXmlApplicationContext(cacheFile, AOP_CONTEXT);
+		assertThat(context.isLoadedFromCache(), equalTo(false));
+		assertThat(context.containsBean("instance"), equalTo(true));
+		context.close();
+	}
+
+	@Test public void cachedAopContextIsEquivalent() {
+		new CachingClassPathXmlApplicationContext(cacheFile, AOP_CONTEXT).close();
+
+		CachingClassPathXmlApplicationContext context = new CachingClassPathXmlApplicationContext(cacheFile, AOP_CONTEXT);
+		assertThat(context.isLoadedFromCache(), equalTo(true));
+		assertThat(((Acceptor) context.getBean("acceptor")).getInstance(), notNullValue());
+
+		((MyClass) context.getBean("instance")).sayHello("Brian");
+		assertThat(((MyLogger) context.getBean("logger")).getCount(), equalTo(1));
+		context.close();
+	}
+
+	public static class CountingPostProcessor implements BeanFactoryPostProcessor {
+		static final AtomicInteger COUNT = new AtomicInteger();
+
+		public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+			COUNT.incrementAndGet();
+		}
+	}
+
+	public static class CountingReappliedPostProcessor implements BeanDefinitionCache.ReappliedPostProcessor {
+		static final AtomicInteger COUNT = new AtomicInteger();
+
+		public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+			COUNT.incrementAndGet();
+		}
+	}
+}
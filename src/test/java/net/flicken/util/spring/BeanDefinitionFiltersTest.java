@@ -0,0 +1,83 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.xml.XmlBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+
+public class BeanDefinitionFiltersTest {
+	XmlBeanFactory beanFactory;
+	BeanFilteringSupport filter = new BeanFilteringSupport();
+	
+	@Before public void createBeanFactory() {
+		Counted.INSTANCES.set(0);
+		beanFactory = new XmlBeanFactory(new ClassPathResource("BeanDefinitionFiltersTest-context.xml", getClass()));
+	}
+	
+	@Test public void scope() {
+		assertMatches(new BeanDefinitionFilters.Scope("prototype"), "prototype");
+	}
+
+	@Test public void lazyInit() {
+		assertMatches(new BeanDefinitionFilters.LazyInit(true), "lazy");
+	}
+	
+	@Test public void attribute() {
+		assertMatches(new BeanDefinitionFilters.Attribute("tier", "optional"), "tagged");
+		assertMatches(new BeanDefinitionFilters.Attribute("tier", "required"));
+	}
+
+	@Test public void qualifier() {
+		assertMatches(new BeanDefinitionFilters.QualifierValue("fast"), "qualified");
+	}
+
+	@Test public void annotation() {
+		assertMatches(new BeanDefinitionFilters.Annotation(Marker.class.getName()), "annotated");
+	}
+	
+	@Test public void combinedWithPatternAndClass() {
+		filter.setBeanPattern("*a*");
+		filter.setBeanClass(Counted.class);
+		assertMatches(new BeanDefinitionFilters.Not(new BeanDefinitionFilters.LazyInit(true)), "plain", "tagged", "qualified", "annotated");
+	}
+	
+	@Test public void beanRemoverUsesFilters() {
+		BeanRemover remover = new BeanRemover();
+		remover.setWhen(true);
+		remover.setBeanDefinitionFilter(new BeanDefinitionFilters.Scope("prototype"));
+		remover.postProcessBeanFactory(beanFactory);
+		
+		assertThat(beanFactory.containsBeanDefinition("prototype"), equalTo(false));
+		assertThat(beanFactory.containsBeanDefinition("plain"), equalTo(true));
+	}
+
+	private void assertMatches(BeanDefinitionFilter definitionFilter, String... names) {
+		filter.setBeanDefinitionFilter(definitionFilter);
+		List<String> matched = Arrays.asList(filter.gatherQualifiedBeanNames(beanFactory));
+		assertThat(matched, equalTo(Arrays.asList(names)));
+		assertThat("No beans instantiated", Counted.INSTANCES.get(), equalTo(0));
+	}
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public static @interface Marker { }
+	
+	public static class Counted {
+		static final AtomicInteger INSTANCES = new AtomicInteger();
+		
+		public Counted() {
+			INSTANCES.incrementAndGet();
+		}
+	}
+	
+	@Marker
+	public static class Annotated extends Counted { }
+}
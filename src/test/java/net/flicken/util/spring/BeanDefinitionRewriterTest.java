@@ -0,0 +1,57 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import net.flicken.util.spring.BeanDefinitionFiltersTest.Counted;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.autoproxy.AutoProxyUtils;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+
+public class BeanDefinitionRewriterTest {
+	XmlBeanFactory beanFactory;
+
+	@Before public void rewriteBeanFactory() {
+		Counted.INSTANCES.set(0);
+		beanFactory = new XmlBeanFactory(new ClassPathResource("BeanDefinitionRewriterTest-context.xml", getClass()));
+		BeanDefinitionRewriter rewriter = (BeanDefinitionRewriter) beanFactory.getBean("rewriter");
+		rewriter.postProcessBeanFactory(beanFactory);
+	}
+
+	@Test public void patternRulesApplyInOrder() {
+		assertThat(definition("reportDaily").isLazyInit(), equalTo(true));
+		assertThat(definition("reportDaily").isSingleton(), equalTo(true));
+		assertThat(definition("reportWeekly").isLazyInit(), equalTo(true));
+		assertThat(definition("reportWeekly").getScope(), equalTo("prototype"));
+	}
+
+	@Test public void abstractAndFactoryMethodDefinitionsAreSkippedByType() {
+		assertThat(definition("reportTemplate").isLazyInit(), equalTo(false));
+		assertThat(definition("reportFactory").isLazyInit(), equalTo(true));
+		assertThat(definition("reportFactory").isSingleton(), equalTo(true));
+	}
+
+	@Test public void removedDefinitionsSkipLaterRules() {
+		assertThat(beanFactory.containsBeanDefinition("debugConsole"), equalTo(false));
+	}
+
+	@Test public void attributesAreSet() {
+		assertThat(definition("service").getAttribute(AutoProxyUtils.PRESERVE_TARGET_CLASS_ATTRIBUTE), equalTo((Object) Boolean.TRUE));
+	}
+
+	@Test public void disabledRulesAreIgnored() {
+		assertThat(beanFactory.containsBeanDefinition("service"), equalTo(true));
+	}
+
+	@Test public void noBeansInstantiated() {
+		assertThat(Counted.INSTANCES.get(), equalTo(0));
+	}
+
+	private BeanDefinition definition(String name) {
+		return beanFactory.getBeanDefinition(name);
+	}
+}
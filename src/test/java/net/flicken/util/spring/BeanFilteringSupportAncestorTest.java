@@ -0,0 +1,126 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin2;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.ClassPathResource;
+
+public class BeanFilteringSupportAncestorTest {
+	CountingBeanFactory parent;
+	BeanFilteringSupport filtering = new BeanFilteringSupport();
+
+	@Before public void createParent() {
+		parent = new CountingBeanFactory();
+		new XmlBeanDefinitionReader(parent).loadBeanDefinitions(
+				new ClassPathResource("AbstractTestBeanFilteringSupport-context.xml", getClass()));
+		filtering.setBeanClass(Plugin.class);
+		filtering.setTypeIndex(null);
+	}
+
+	@Test public void frozenParentIsQueriedOnceForAllChildren() {
+		parent.freezeConfiguration();
+		for (int i = 0; i < 3; i++) {
+			assertNames(filtering.gatherQualifiedBeanNames(new DefaultListableBeanFactory(parent)), "plugin1", "plugin2", "extra");
+		}
+		assertThat(parent.queries, equalTo(1));
+	}
+
+	@Test public void unfrozenParentIsQueriedByEachChild() {
+		for (int i = 0; i < 3; i++) {
+			filtering.gatherQualifiedBeanNames(new DefaultListableBeanFactory(parent));
+		}
+		assertThat(parent.queries, equalTo(3));
+	}
+
+	@Test public void childMatchesAreMergedOverSharedParentMatches() {
+		parent.freezeConfiguration();
+		DefaultListableBeanFactory child = new DefaultListableBeanFactory(parent);
+		child.registerBeanDefinition("local", new RootBeanDefinition(Plugin2.class));
+		child.registerBeanDefinition("plugin1", new RootBeanDefinition(Object.class));
+
+		assertNames(filtering.gatherQualifiedBeanNames(new DefaultListableBeanFactory(parent)), "plugin1", "plugin2", "extra");
+		assertNames(filtering.gatherQualifiedBeanNames(child), "local", "plugin2", "extra");
+		assertThat(parent.queries, equalTo(1));
+	}
+
+	@Test public void definitionFilteredQueriesAreSharedByEqualFilters() {
+		parent.freezeConfiguration();
+		for (int i = 0; i < 3; i++) {
+			BeanFilteringSupport childFiltering = new BeanFilteringSupport();
+			childFiltering.setTypeIndex(null);
+			childFiltering.setBeanPattern("plugin*");
+			childFiltering.setBeanDefinitionFilter(new BeanDefinitionFilters.Not(new BeanDefinitionFilters.Scope("prototype")));
+			assertNames(childFiltering.gatherQualifiedBeanNames(new DefaultListableBeanFactory(parent)), "plugin1", "plugin2");
+		}
+		assertThat(parent.definitionQueries, equalTo(1));
+	}
+
+	@Test public void definitionFilteredQueriesAreNotCachedForFiltersWithoutEquals() {
+		parent.freezeConfiguration();
+		filtering.setBeanPattern("plugin*");
+		filtering.setBeanDefinitionFilter(new BeanDefinitionFilter() {
+			public boolean matches(String beanName, BeanDefinition definition) {
+				return definition.isSingleton();
+			}
+		});
+		for (int i = 0; i < 3; i++) {
+			assertNames(filtering.gatherQualifiedBeanNames(new DefaultListableBeanFactory(parent)), "plugin1", "plugin2");
+		}
+		assertThat(parent.definitionQueries, equalTo(3));
+	}
+
+	@Test public void childTypesAreNotPinned() throws Exception {
+		parent.freezeConfiguration();
+		ClassLoader childLoader = new URLClassLoader(new URL[] { getClass().getProtectionDomain().getCodeSource().getLocation() }, null);
+		Class<?> childType = childLoader.loadClass(Plugin.class.getName());
+		filtering.setBeanClass(childType);
+		filtering.gatherQualifiedBeanNames(new DefaultListableBeanFactory(parent));
+
+		WeakReference<ClassLoader> loaderReference = new WeakReference<ClassLoader>(childLoader);
+		childLoader = null;
+		childType = null;
+		filtering.setBeanClass(Plugin.class);
+		for (int i = 0; i < 20 && loaderReference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertThat(loaderReference.get(), nullValue());
+	}
+
+	private static void assertNames(String[] names, String... expected) {
+		assertThat(Arrays.asList(names), equalTo(Arrays.asList(expected)));
+	}
+
+	@SuppressWarnings("serial")
+	static class CountingBeanFactory extends DefaultListableBeanFactory {
+		int queries = 0;
+		int definitionQueries = 0;
+
+		@Override
+		public String[] getBeanNamesForType(Class type) {
+			queries++;
+			return super.getBeanNamesForType(type);
+		}
+
+		@Override
+		public String[] getBeanDefinitionNames() {
+			definitionQueries++;
+			return super.getBeanDefinitionNames();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import net.flicken.util.spring.BeanFootprintReporter.BeanFootprint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class BeanFootprintReporterTest {
+	@Resource ApplicationContext context;
+	@Resource BeanFootprintReporter reporter;
+
+	@Test public void largestBeanFirst() {
+		List<BeanFootprint> beans = reporter.report(context).get("plugins");
+		assertThat(beans.size(), equalTo(5));
+		assertThat(beans.get(0).getName(), equalTo("large"));
+		assertThat(beans.get(0).getFootprint().getRetainedSize(), greaterThan(100000L));
+	}
+
+	@Test public void otherSingletonsAreNotCounted() {
+		ObjectGraphSizer.Footprint footprint = footprints().get("usesService");
+		assertThat(footprint.getReachableSize(), lessThan(1000L));
+	}
+
+	@Test public void sharedObjectsAreNotRetained() {
+		ObjectGraphSizer.Footprint footprint = footprints().get("sharedA");
+		assertThat(footprint.getReachableSize(), greaterThan(20000L));
+		assertThat(footprint.getRetainedSize(), lessThan(1000L));
+		assertThat(footprints().get("sharedB").getRetainedSize(), lessThan(1000L));
+	}
+
+	@Test public void formatsReport() {
+		String report = reporter.format(reporter.report(context));
+		assertThat(report, containsString("plugins: 5 beans"));
+		assertThat(report, containsString("large"));
+	}
+
+	private Map<String, ObjectGraphSizer.Footprint> footprints() {
+		Map<String, ObjectGraphSizer.Footprint> footprints = new HashMap<String, ObjectGraphSizer.Footprint>();
+		for (BeanFootprint bean : reporter.report(context).get("plugins")) {
+			footprints.put(bean.getName(), bean.getFootprint());
+		}
+		return footprints;
+	}
+
+	public static class Plugin {
+		private Payload payload;
+
+		public void setPayload(Payload payload) {
+			this.payload = payload;
+		}
+
+		public Payload getPayload() {
+			return payload;
+		}
+	}
+
+	public static class Payload {
+		private static final Payload SHARED = new Payload(20000);
+		private final byte[] data;
+
+		public Payload(int size) {
+			data = new byte[size];
+		}
+
+		public static Payload shared() {
+			return SHARED;
+		}
+
+		public int getSize() {
+			return data.length;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.flicken.util.spring.BeanDefinitionFiltersTest.Counted;
+import net.flicken.util.spring.BeanRemover.UnpredictableTypePolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.xml.XmlBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+
+public class BeanRemoverTypeTest {
+	XmlBeanFactory beanFactory;
+	BeanRemover remover = new BeanRemover();
+
+	@Before public void createBeanFactory() {
+		Counted.INSTANCES.set(0);
+		CountedFactoryBean.INSTANCES.set(0);
+		beanFactory = new XmlBeanFactory(new ClassPathResource("BeanRemoverTypeTest-context.xml", getClass()));
+		remover.setWhen(true);
+		remover.setBeanClass(Counted.class);
+	}
+
+	@Test public void predictedTypesMatchWithoutInstantiation() {
+		remover.postProcessBeanFactory(beanFactory);
+		assertRemaining("other", "factory", "collected", "fromOther");
+		assertThat(CountedFactoryBean.INSTANCES.get(), equalTo(0));
+		assertThat(Counted.INSTANCES.get(), equalTo(0));
+	}
+
+	@Test public void unpredictableTypesCanBeRemoved() {
+		remover.setUnpredictableTypePolicy(UnpredictableTypePolicy.REMOVE);
+		remover.setBeanPattern("f*");
+		remover.postProcessBeanFactory(beanFactory);
+		assertRemaining("plain", "other", "collected", "fromOther");
+		assertThat(CountedFactoryBean.INSTANCES.get(), equalTo(0));
+	}
+
+	@Test public void instanceFactoryMethodsArePredictedFromReturnType() {
+		remover.setUnpredictableTypePolicy(UnpredictableTypePolicy.REMOVE);
+		remover.setBeanPattern("fromOther");
+		remover.postProcessBeanFactory(beanFactory);
+		assertRemaining("plain", "other", "factory", "collected", "fromOther");
+		assertThat(beanFactory.containsSingleton("other"), equalTo(false));
+	}
+
+	@Test public void unpredictableTypesCanBeResolved() {
+		remover.setUnpredictableTypePolicy(UnpredictableTypePolicy.RESOLVE);
+		remover.postProcessBeanFactory(beanFactory);
+		assertRemaining("other", "collected", "fromOther");
+		assertThat(CountedFactoryBean.INSTANCES.get(), equalTo(1));
+	}
+
+	@Test public void unpredictableTypesCanFail() {
+		remover.setUnpredictableTypePolicy(UnpredictableTypePolicy.FAIL);
+		try {
+			remover.postProcessBeanFactory(beanFactory);
+			fail("Expected failure on factory bean");
+		} catch (BeanInitializationException e) {
+			assertThat(CountedFactoryBean.INSTANCES.get(), equalTo(0));
+		}
+	}
+
+	@Test public void factoryBeansMatchByOwnClass() {
+		remover.setBeanClass(CountedFactoryBean.class);
+		remover.postProcessBeanFactory(beanFactory);
+		assertRemaining("plain", "other", "collected", "fromOther");
+	}
+
+	@Test public void withoutBeanClassAllDefinitionsMatchPattern() {
+		remover.setBeanClass(null);
+		remover.setBeanPattern("o*");
+		remover.postProcessBeanFactory(beanFactory);
+		assertRemaining("plain", "factory", "collected", "fromOther");
+	}
+
+	private void assertRemaining(String... names) {
+		List<String> remaining = Arrays.asList(beanFactory.getBeanDefinitionNames());
+		assertThat(remaining, equalTo(Arrays.asList(names)));
+	}
+
+	public static class CountedFactoryBean implements FactoryBean {
+		static final AtomicInteger INSTANCES = new AtomicInteger();
+
+		public CountedFactoryBean() {
+			INSTANCES.incrementAndGet();
+		}
+
+		public Object getObject() {
+			return new Counted();
+		}
+
+		public Class<?> getObjectType() {
+			return Counted.class;
+		}
+
+		public boolean isSingleton() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.matchers.JUnitMatchers.hasItems;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.ExtraPlugin;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+
+public class BeanTypeIndexTest {
+	static final String CONTEXT = "net/flicken/util/spring/AbstractTestBeanFilteringSupport-context.xml";
+	static final String OTHER_CONTEXT = "net/flicken/util/spring/TestInstanceCollectingFactoryBean-context.xml";
+	
+	File indexFile;
+	ClassPathXmlApplicationContext context;
+	
+	@Before public void createContext() throws Exception {
+		indexFile = File.createTempFile("bean-types", ".properties");
+		indexFile.delete();
+		context = new ClassPathXmlApplicationContext(CONTEXT);
+	}
+	
+	@After public void closeContext() {
+		context.close();
+		indexFile.delete();
+	}
+
+	@Test public void indexIncludesSupertypesAndInterfaces() throws Exception {
+		BeanTypeIndex index = new BeanTypeIndex();
+		index.add(BeanTypeIndex.loadBeanDefinitions(new String[] { CONTEXT }));
+		
+		BeanTypeIndex.Section section = index.getSection(context);
+		assertThat(section, notNullValue());
+		assertThat(Arrays.asList(section.getBeanNamesForType(Plugin.class)), hasItems("plugin1", "plugin2", "extra"));
+		assertThat(section.getBeanNamesForType(ExtraPlugin.class), equalTo(new String[] { "extra" }));
+	}
+	
+	@Test public void generatedIndexIsUsed() throws Exception {
+		BeanTypeIndex.main(new String[] { indexFile.getPath(), CONTEXT, OTHER_CONTEXT });
+		
+		BeanFilteringSupport filter = new BeanFilteringSupport();
+		filter.setTypeIndex(new FileSystemResource(indexFile));
+		filter.setBeanClass(Plugin.class);
+		assertThat(filter.getTypeIndexSection(context), notNullValue());
+		
+		List<String> names = Arrays.asList(filter.gatherQualifiedBeanNames(context));
+		assertThat(names.size(), equalTo(3));
+		assertThat(names, hasItems("plugin1", "plugin2", "extra"));
+		assertThat(filter.gatherQualifiedBeans(context).size(), equalTo(3));
+	}
+
+	@Test public void staleIndexFallsBack() throws Exception {
+		BeanTypeIndex index = new BeanTypeIndex();
+		index.add(BeanTypeIndex.loadBeanDefinitions(new String[] { OTHER_CONTEXT }));
+		OutputStream out = new FileOutputStream(indexFile);
+		try {
+			index.write(out);
+		} finally {
+			out.close();
+		}
+		
+		BeanFilteringSupport filter = new BeanFilteringSupport();
+		filter.setTypeIndex(new FileSystemResource(indexFile));
+		filter.setBeanClass(Plugin.class);
+		assertThat(filter.getTypeIndexSection(context), nullValue());
+		assertThat(filter.gatherQualifiedBeans(context).size(), equalTo(3));
+	}
+}
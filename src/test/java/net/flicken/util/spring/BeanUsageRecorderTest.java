@@ -0,0 +1,164 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+public class BeanUsageRecorderTest {
+	File profile;
+
+	@Before public void createProfile() throws Exception {
+		profile = File.createTempFile("usage", ".properties");
+		profile.delete();
+		Service.created.clear();
+	}
+
+	@After public void deleteProfile() {
+		profile.delete();
+	}
+
+	@Test public void recordsUsageOfMatchingSingletons() throws Exception {
+		GenericApplicationContext context = record();
+		BeanUsageRecorder recorder = (BeanUsageRecorder) context.getBean("recorder");
+		assertThat(AopUtils.isCglibProxy(context.getBean("orderService")), equalTo(true));
+		assertThat(AopUtils.isAopProxy(context.getBean("auditService")), equalTo(false));
+
+		((Client) context.getBean("client")).run();
+		context.getBean("orderService").toString();
+		assertThat(recorder.getUsage().get("orderService"), equalTo(1L));
+		assertThat(recorder.getUsage().get("reportService"), equalTo(0L));
+		assertThat(recorder.getUsage().containsKey("auditService"), equalTo(false));
+
+		context.close();
+		assertThat(profile.exists(), equalTo(true));
+	}
+
+	@Test public void unusedBeansAreLazyOnNextStart() throws Exception {
+		GenericApplicationContext context = record();
+		((Client) context.getBean("client")).run();
+		context.close();
+		Service.created.clear();
+
+		context = load();
+		context.registerBeanDefinition("lazyInit", BeanDefinitionBuilder.rootBeanDefinition(LazyInitUnusedBeans.class)
+				.addPropertyValue("beanPattern", "*Service")
+				.addPropertyValue("profile", new FileSystemResource(profile))
+				.getBeanDefinition());
+		context.refresh();
+		assertThat(context.getBeanDefinition("reportService").isLazyInit(), equalTo(true));
+		assertThat(context.getBeanDefinition("orderService").isLazyInit(), equalTo(false));
+		assertThat(Service.created.contains("reportService"), equalTo(false));
+		assertThat(Service.created.contains("orderService"), equalTo(true));
+
+		context.getBean("reportService");
+		assertThat(Service.created.contains("reportService"), equalTo(true));
+		context.close();
+	}
+
+	@Test public void containerCalledBeansAreNotLazy() throws Exception {
+		GenericApplicationContext context = record();
+		context.start();
+		context.close();
+		Properties usage = PropertiesLoaderUtils.loadProperties(new FileSystemResource(profile));
+		assertThat(usage.getProperty("serverService"), equalTo("0"));
+		assertThat(usage.getProperty("schedulerService"), equalTo("0"));
+		Service.created.clear();
+
+		context = load();
+		context.registerBeanDefinition("lazyInit", BeanDefinitionBuilder.rootBeanDefinition(LazyInitUnusedBeans.class)
+				.addPropertyValue("beanPattern", "*Service")
+				.addPropertyValue("profile", new FileSystemResource(profile))
+				.getBeanDefinition());
+		context.refresh();
+		assertThat(context.getBeanDefinition("reportService").isLazyInit(), equalTo(true));
+		assertThat(context.getBeanDefinition("serverService").isLazyInit(), equalTo(false));
+		assertThat(context.getBeanDefinition("schedulerService").isLazyInit(), equalTo(false));
+		assertThat(Service.created.contains("schedulerService"), equalTo(true));
+
+		context.start();
+		assertThat(Server.started, equalTo(true));
+		context.close();
+	}
+
+	@Test public void missingProfileChangesNothing() throws Exception {
+		GenericApplicationContext context = load();
+		context.registerBeanDefinition("lazyInit", BeanDefinitionBuilder.rootBeanDefinition(LazyInitUnusedBeans.class)
+				.addPropertyValue("profile", new FileSystemResource(profile))
+				.getBeanDefinition());
+		context.refresh();
+		assertThat(Service.created.contains("reportService"), equalTo(true));
+		context.close();
+	}
+
+	private GenericApplicationContext record() {
+		GenericApplicationContext context = load();
+		context.registerBeanDefinition("recorder", BeanDefinitionBuilder.rootBeanDefinition(BeanUsageRecorder.class)
+				.addPropertyValue("beanPattern", "*Service")
+				.addPropertyValue("profile", profile)
+				.getBeanDefinition());
+		context.refresh();
+		return context;
+	}
+
+	private GenericApplicationContext load() {
+		GenericApplicationContext context = new GenericApplicationContext();
+		new XmlBeanDefinitionReader(context).loadBeanDefinitions(new ClassPathResource("BeanUsageRecorderTest-context.xml", getClass()));
+		return context;
+	}
+
+	public static class Service implements BeanNameAware {
+		static final Set<String> created = new HashSet<String>();
+
+		public void setBeanName(String name) {
+			created.add(name);
+		}
+
+		public void serve() {
+		}
+	}
+
+	public static class Server extends Service implements Lifecycle {
+		static volatile boolean started = false;
+
+		public void start() {
+			started = true;
+		}
+
+		public void stop() {
+			started = false;
+		}
+
+		public boolean isRunning() {
+			return started;
+		}
+	}
+
+	public static class Client {
+		private Service service;
+
+		public void setService(Service service) {
+			this.service = service;
+		}
+
+		public void run() {
+			service.serve();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+public class MappedFileHandlerTest {
+	File directory = new File(System.getProperty("java.io.tmpdir"), "MappedFileHandlerTest");
+
+	@Before @After public void deleteSegments() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	@After public void resetLogging() throws Exception {
+		LogManager.getLogManager().readConfiguration();
+	}
+
+	@Test public void recordsRollOverToNewSegments() throws Exception {
+		MappedFileHandler handler = new MappedFileHandler(directory + "/roll-%g.mlog", 256, 0);
+		handler.setFormatter(new MessageFormatter());
+		for (int i = 0; i < 100; i++) {
+			handler.publish(record("message " + i));
+		}
+		handler.close();
+
+		assertThat(handler.getSegmentNumber() > 1, equalTo(true));
+		List<String> records = new ArrayList<String>();
+		for (long i = 1; i <= handler.getSegmentNumber(); i++) {
+			records.addAll(MappedLogReader.readRecords(handler.getSegmentFile(i)));
+		}
+		assertThat(records.size(), equalTo(100));
+		assertThat(records.get(99), equalTo("message 99\n"));
+	}
+
+	@Test public void oversizedRecordsGetTheirOwnSegment() throws Exception {
+		MappedFileHandler handler = new MappedFileHandler(directory + "/big-%g.mlog", 64, 0);
+		handler.setFormatter(new MessageFormatter());
+		StringBuilder message = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			message.append("long ");
+		}
+		handler.publish(record(message.toString()));
+		handler.close();
+
+		assertThat(MappedLogReader.readRecords(handler.getSegmentFile(1)).get(0), equalTo(message + "\n"));
+	}
+
+	@Test public void restartsAfterLastSegmentAndKeepsCount() throws Exception {
+		MappedFileHandler first = new MappedFileHandler(directory + "/keep-%g.mlog", 64, 2);
+		first.setFormatter(new MessageFormatter());
+		first.publish(record("first"));
+		first.close();
+
+		MappedFileHandler second = new MappedFileHandler(directory + "/keep-%g.mlog", 64, 2);
+		second.setFormatter(new MessageFormatter());
+		for (int i = 0; i < 5; i++) {
+			second.publish(record("message " + i + " of the second run"));
+		}
+		second.close();
+
+		assertThat(second.getSegmentNumber(), equalTo(6L));
+		assertThat(second.getSegmentFile(1).exists(), equalTo(false));
+		assertThat(second.getSegmentFile(4).exists(), equalTo(false));
+		assertThat(MappedLogReader.readRecords(second.getSegmentFile(6)).get(0), equalTo("message 4 of the second run\n"));
+	}
+
+	@Test public void configuredViaJavaLoggingConfigurer() throws Exception {
+		JavaLoggingConfigurer configurer = new JavaLoggingConfigurer();
+		configurer.setResource(new ClassPathResource("MappedFileHandlerTest-logging.properties", getClass()));
+		configurer.afterPropertiesSet();
+
+		Logger logger = Logger.getLogger(MappedFileHandlerTest.class.getName());
+		Handler[] handlers = logger.getHandlers();
+		assertThat(handlers.length, equalTo(1));
+		assertThat(handlers[0], instanceOf(MappedFileHandler.class));
+
+		MappedFileHandler handler = (MappedFileHandler) handlers[0];
+		assertThat(handler.getSegmentSize(), equalTo(4096));
+		logger.info("audited");
+		handler.flush();
+		assertThat(MappedLogReader.readRecords(handler.getSegmentFile(handler.getSegmentNumber())).get(0), equalTo("audited\n"));
+	}
+
+	private LogRecord record(String message) {
+		LogRecord record = new LogRecord(Level.INFO, message);
+		record.setLoggerName("test");
+		return record;
+	}
+
+	public static class MessageFormatter extends Formatter {
+		@Override
+		public String format(LogRecord record) {
+			return record.getMessage() + "\n";
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+public class ParallelInitializingBeanFactoryTest {
+	ParallelClassPathXmlApplicationContext context;
+	String mainThread;
+	
+	@Before public void createContext() {
+		SlowBean.rendezvous = new CountDownLatch(2);
+		mainThread = Thread.currentThread().getName();
+		context = new ParallelClassPathXmlApplicationContext("ParallelInitializingBeanFactoryTest-context.xml", getClass());
+	}
+	
+	@After public void closeContext() {
+		context.close();
+	}
+	
+	@Test public void independentBeansAreCreatedConcurrently() {
+		Set<String> threads = new HashSet<String>();
+		for (int i = 1; i <= 4; i++) {
+			// Only passes the rendezvous once two beans are being initialized at the same time
+			assertThat(bean("slow" + i).metOther, equalTo(true));
+			threads.add(bean("slow" + i).thread);
+		}
+		assertThat(threads.size(), greaterThan(1));
+	}
+	
+	@Test public void dependenciesAreInitializedFirst() {
+		SlowBean dependent = bean("dependent");
+		assertThat(dependent.initializedDependencies, equalTo(true));
+		assertThat(bean("slow3").initializedAt <= dependent.initializedAt, equalTo(true));
+	}
+	
+	@Test public void circularReferencesAreResolved() {
+		assertThat(bean("circularA").dependencies.get(0), equalTo((Object) bean("circularB")));
+		assertThat(bean("circularB").dependencies.get(0), equalTo((Object) bean("circularA")));
+	}
+	
+	@Test public void excludedBeansAreCreatedSequentially() {
+		assertThat(bean("sequential").thread, equalTo(mainThread));
+		assertThat(bean("slow1").thread, not(equalTo(mainThread)));
+	}
+	
+	@Test(timeout = 10000) public void factoryBeanObjectsNeedingBeansInCreationDoNotDeadlock() {
+		GateBean.entered = new CountDownLatch(1);
+		ParallelClassPathXmlApplicationContext factoryContext
+			= new ParallelClassPathXmlApplicationContext("ParallelInitializingBeanFactoryTest-factory-context.xml", getClass());
+		try {
+			Object gate = factoryContext.getBean("gate");
+			assertThat(((SlowBean) factoryContext.getBean("user")).dependencies.get(0), equalTo(gate));
+		} finally {
+			factoryContext.close();
+		}
+	}
+
+	@Test public void exclusionsDoNotCreateFactoryBeans() {
+		CountingFactoryBean.created = 0;
+		ParallelInitializingBeanFactory beanFactory = new ParallelInitializingBeanFactory();
+		beanFactory.registerBeanDefinition("factory", new RootBeanDefinition(CountingFactoryBean.class));
+		beanFactory.registerBeanDefinition("sequential", new RootBeanDefinition(SlowBean.class));
+		beanFactory.registerBeanDefinition("other", new RootBeanDefinition(Object.class));
+		BeanFilteringSupport excludedBeans = new BeanFilteringSupport();
+		excludedBeans.setBeanClass(SlowBean.class);
+		ParallelInitializationConfigurer configurer = new ParallelInitializationConfigurer();
+		configurer.setExcludedBeans(excludedBeans);
+
+		configurer.postProcessBeanFactory(beanFactory);
+		assertThat(CountingFactoryBean.created, equalTo(0));
+		assertThat(beanFactory.getBeanDefinition("sequential").hasAttribute(ParallelInitializingBeanFactory.SEQUENTIAL_ATTRIBUTE), equalTo(true));
+		assertThat(beanFactory.getBeanDefinition("other").hasAttribute(ParallelInitializingBeanFactory.SEQUENTIAL_ATTRIBUTE), equalTo(false));
+	}
+
+	private SlowBean bean(String name) {
+		return (SlowBean) context.getBean(name);
+	}
+	
+	public static class SlowBean implements InitializingBean {
+		static CountDownLatch rendezvous;
+
+		List<Object> dependencies = new ArrayList<Object>();
+		boolean waitForOther = false;
+		boolean metOther = false;
+		String thread;
+		long initializedAt;
+		boolean initializedDependencies = true;
+
+		public void setDependencies(List<Object> dependencies) {
+			this.dependencies = dependencies;
+		}
+
+		/**
+		 * Whether initialization waits for another bean waiting for other, at most a few seconds.
+		 */
+		public void setWaitForOther(boolean waitForOther) {
+			this.waitForOther = waitForOther;
+		}
+		
+		public void afterPropertiesSet() throws Exception {
+			for (Object dependency : dependencies) {
+				initializedDependencies &= !(dependency instanceof SlowBean) || ((SlowBean) dependency).initializedAt > 0;
+			}
+			if (waitForOther) {
+				rendezvous.countDown();
+				metOther = rendezvous.await(5, TimeUnit.SECONDS);
+			}
+			thread = Thread.currentThread().getName();
+			initializedAt = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Holds on to its creation until a {@link GateFactoryBean} has started getting its object.
+	 */
+	public static class GateBean implements InitializingBean {
+		static CountDownLatch entered;
+
+		public void afterPropertiesSet() throws Exception {
+			entered.await(5, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Gets the gate bean from within {@link #getObject()}, while Spring holds the singleton lock.
+	 */
+	public static class GateFactoryBean implements FactoryBean, BeanFactoryAware {
+		BeanFactory beanFactory;
+
+		public void setBeanFactory(BeanFactory beanFactory) {
+			this.beanFactory = beanFactory;
+		}
+
+		public Object getObject() {
+			GateBean.entered.countDown();
+			return beanFactory.getBean("gate");
+		}
+
+		public Class<?> getObjectType() {
+			return GateBean.class;
+		}
+
+		public boolean isSingleton() {
+			return true;
+		}
+	}
+
+	public static class CountingFactoryBean implements FactoryBean {
+		static int created;
+
+		public CountingFactoryBean() {
+			created++;
+		}
+
+		public Object getObject() {
+			return new SlowBean();
+		}
+
+		public Class<?> getObjectType() {
+			return SlowBean.class;
+		}
+
+		public boolean isSingleton() {
+			return true;
+		}
+	}
+}
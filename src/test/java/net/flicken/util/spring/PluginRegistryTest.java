@@ -0,0 +1,121 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.AbstractExtraPlugin1;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.ExtraPlugin;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin1;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin2;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class PluginRegistryTest {
+	@Resource PluginRegistry<Plugin> registry;
+	@Resource Plugin1 plugin1;
+	@Resource Plugin2 plugin2;
+	@Resource ExtraPlugin extra;
+
+	@Test public void registeredByPostProcessor() {
+		assertThat(registry.getAll(), equalTo(Arrays.<Plugin>asList(plugin1, plugin2, extra)));
+		assertThat(registry.getAllOfType(AbstractExtraPlugin1.class), equalTo(Arrays.<AbstractExtraPlugin1>asList(plugin1, extra)));
+		assertThat(registry.getFirstOfType(Plugin2.class), sameInstance(plugin2));
+	}
+
+	@Test public void lookupsSeeLaterRegistrations() {
+		PluginRegistry<Plugin> plugins = new PluginRegistry<Plugin>();
+		plugins.register(new Plugin1());
+		assertThat(plugins.getAllOfType(Plugin2.class).size(), equalTo(0));
+		assertThat(plugins.getFirstOfType(Plugin2.class), nullValue());
+
+		Plugin2 added = new Plugin2();
+		plugins.registerAll(Arrays.asList(added, new Plugin2()));
+		assertThat(plugins.size(), equalTo(3));
+		assertThat(plugins.getFirstOfType(Plugin2.class), sameInstance(added));
+
+		assertThat(plugins.unregister(added), equalTo(true));
+		assertThat(plugins.getAllOfType(Plugin2.class).size(), equalTo(1));
+		assertThat(plugins.unregister(added), equalTo(false));
+	}
+
+	@Test public void snapshotsAreUnaffectedByAppends() {
+		PluginRegistry<Plugin> plugins = new PluginRegistry<Plugin>();
+		plugins.register(plugin1);
+		List<Plugin> before = plugins.getAll();
+		for (int i = 0; i < 100; i++) {
+			plugins.register(new Plugin2());
+		}
+		assertThat(before, equalTo(Arrays.<Plugin>asList(plugin1)));
+		assertThat(plugins.size(), equalTo(101));
+	}
+
+	@Test public void viewsAreUnmodifiable() {
+		try {
+			registry.getAll().add(new Plugin2());
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test public void nullPluginsAreRejected() {
+		PluginRegistry<Plugin> plugins = new PluginRegistry<Plugin>();
+		try {
+			plugins.register(null);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			plugins.registerAll(Arrays.<Plugin>asList(plugin1, null));
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertThat(plugins.isEmpty(), equalTo(true));
+		assertThat(plugins.unregister(null), equalTo(false));
+	}
+
+	@Test public void concurrentReadsDuringRegistration() throws Exception {
+		final PluginRegistry<Plugin> plugins = new PluginRegistry<Plugin>();
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					while (plugins.size() < 1000) {
+						for (Plugin plugin : plugins.getAllOfType(Plugin.class)) {
+							if (plugin == null) {
+								throw new AssertionError("Saw unpublished plugin");
+							}
+						}
+					}
+				} catch (Throwable e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < 1000; i++) {
+			plugins.register(new Plugin1());
+		}
+		reader.join();
+		assertThat(failures.size(), equalTo(0));
+	}
+}
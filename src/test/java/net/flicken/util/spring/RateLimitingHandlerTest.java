@@ -0,0 +1,165 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+public class RateLimitingHandlerTest {
+	CollectingHandler collected = new CollectingHandler();
+	
+	@After public void resetLogging() throws Exception {
+		LogManager.getLogManager().readConfiguration();
+	}
+
+	@Test public void repeatedMessagesAreCollapsed() throws Exception {
+		RateLimitingHandler handler = new RateLimitingHandler(collected);
+		handler.setSummaryInterval(50);
+		
+		for (int i = 0; i < 10; i++) {
+			handler.publish(record("same"));
+		}
+		assertThat(collected.records.size(), equalTo(1));
+		
+		Thread.sleep(100);
+		handler.publish(record("same"));
+		assertThat(collected.records.size(), equalTo(3));
+		assertThat(collected.records.get(1).getMessage(), containsString("9 repeats"));
+		assertThat(collected.records.get(2).getMessage(), equalTo("same"));
+	}
+	
+	@Test public void pendingRepeatsAreSummarizedOnFlush() {
+		RateLimitingHandler handler = new RateLimitingHandler(collected);
+		
+		for (int i = 0; i < 10; i++) {
+			handler.publish(record("same"));
+		}
+		handler.flush();
+		assertThat(collected.records.size(), equalTo(2));
+		assertThat(collected.records.get(1).getMessage(), containsString("9 repeats"));
+		
+		handler.flush();
+		assertThat(collected.records.size(), equalTo(2));
+	}
+
+	@Test public void pendingDropsAreSummarizedOnClose() {
+		RateLimitingHandler handler = new RateLimitingHandler(collected);
+		handler.setRate(1);
+		handler.setBurst(2);
+		
+		for (int i = 0; i < 10; i++) {
+			handler.publish(record("message " + i));
+		}
+		handler.close();
+		assertThat(collected.records.size(), equalTo(3));
+		assertThat(collected.records.get(2).getMessage(), containsString("8 records suppressed"));
+		assertThat(collected.records.get(2).getLoggerName(), equalTo("test"));
+	}
+
+	@Test public void evictedRepeatsAreSummarized() {
+		RateLimitingHandler handler = new RateLimitingHandler(collected);
+		handler.setMaxTrackedMessages(1);
+		
+		handler.publish(record("first"));
+		handler.publish(record("first"));
+		handler.publish(record("second"));
+		assertThat(collected.records.size(), equalTo(3));
+		assertThat(collected.records.get(1).getMessage(), containsString("1 repeats of previous message suppressed: first"));
+		assertThat(collected.records.get(2).getMessage(), equalTo("second"));
+	}
+
+	@Test public void messagesWithDifferentParametersAreNotRepeats() {
+		RateLimitingHandler handler = new RateLimitingHandler(collected);
+		
+		for (int i = 0; i < 3; i++) {
+			LogRecord record = record("order {0} failed");
+			record.setParameters(new Object[] { "A" });
+			handler.publish(record);
+		}
+		LogRecord other = record("order {0} failed");
+		other.setParameters(new Object[] { "B" });
+		handler.publish(other);
+		assertThat(collected.records.size(), equalTo(2));
+		assertThat(collected.records.get(1).getParameters()[0], equalTo((Object) "B"));
+		
+		handler.flush();
+		assertThat(collected.records.size(), equalTo(3));
+		assertThat(collected.records.get(2).getMessage(), containsString("2 repeats of previous message suppressed: order A failed"));
+	}
+
+	@Test public void distinctMessagesAreRateLimited() {
+		RateLimitingHandler handler = new RateLimitingHandler(collected);
+		handler.setRate(1);
+		handler.setBurst(5);
+		
+		for (int i = 0; i < 20; i++) {
+			handler.publish(record("message " + i));
+		}
+		assertThat(collected.records.size(), equalTo(5));
+	}
+
+	@Test public void rateIsPerLogger() {
+		RateLimitingHandler handler = new RateLimitingHandler(collected);
+		handler.setRate(1);
+		handler.setBurst(1);
+		
+		for (int i = 0; i < 5; i++) {
+			LogRecord record = record("message " + i);
+			record.setLoggerName("logger" + (i % 2));
+			handler.publish(record);
+		}
+		assertThat(collected.records.size(), equalTo(2));
+	}
+
+	@Test public void configuredViaJavaLoggingConfigurer() throws Exception {
+		JavaLoggingConfigurer configurer = new JavaLoggingConfigurer();
+		configurer.setResource(new ClassPathResource("RateLimitingHandlerTest-logging.properties", getClass()));
+		configurer.afterPropertiesSet();
+		
+		Logger logger = Logger.getLogger(RateLimitingHandlerTest.class.getName());
+		Handler[] handlers = logger.getHandlers();
+		assertThat(handlers.length, equalTo(1));
+		assertThat(handlers[0], instanceOf(RateLimitingHandler.class));
+		
+		RateLimitingHandler handler = (RateLimitingHandler) handlers[0];
+		assertThat(handler.getBurst(), equalTo(3.0));
+		CollectingHandler target = (CollectingHandler) handler.getTarget();
+		for (int i = 0; i < 10; i++) {
+			logger.info("message " + i);
+		}
+		assertThat(target.records.size(), equalTo(3));
+	}
+	
+	private LogRecord record(String message) {
+		LogRecord record = new LogRecord(Level.INFO, message);
+		record.setLoggerName("test");
+		return record;
+	}
+	
+	public static class CollectingHandler extends Handler {
+		List<LogRecord> records = new CopyOnWriteArrayList<LogRecord>();
+
+		@Override
+		public void publish(LogRecord record) {
+			records.add(record);
+		}
+
+		@Override
+		public void flush() { }
+
+		@Override
+		public void close() throws SecurityException { }
+	}
+}
@@ -0,0 +1,112 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin1;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Registry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.xml.XmlBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+public class RegistrationBindingsTest {
+	static final String CONTEXT = "net/flicken/util/spring/AbstractTestBeanFilteringSupport-context.xml";
+	static final String NAME_AWARE_CONTEXT = "net/flicken/util/spring/TestRegisteringBeanPostProcessorIsNameAware-context.xml";
+
+	File bindingsFile;
+	XmlBeanFactory beanFactory;
+
+	@Before public void createBeanFactory() throws Exception {
+		bindingsFile = File.createTempFile("registration-bindings", ".properties");
+		bindingsFile.delete();
+		beanFactory = new XmlBeanFactory(new ClassPathResource(CONTEXT));
+	}
+
+	@After public void deleteBindings() {
+		bindingsFile.delete();
+	}
+
+	@Test public void generatesBindingsFromContexts() throws Exception {
+		RegistrationBindings.main(new String[] { bindingsFile.getPath(), CONTEXT, CONTEXT + "," + NAME_AWARE_CONTEXT });
+
+		RegistrationBindings bindings = RegistrationBindings.load(new FileSystemResource(bindingsFile));
+		RegistrationBindings.Binding binding = bindings.getBinding("registry.registerPlugin");
+		assertThat(binding, notNullValue());
+		assertThat(binding.getTargetName(), equalTo("registry"));
+		assertThat(binding.getTargetClassName(), equalTo(Registry.class.getName()));
+		assertThat(binding.getMethodName(), equalTo("registerPlugin"));
+		assertThat(bindings.getBinding("plugin1"), nullValue());
+	}
+
+	@Test public void processorUsesBindingWithoutResolvingMethod() throws Exception {
+		RegistrationBindings.main(new String[] { bindingsFile.getPath(), NAME_AWARE_CONTEXT + "," + CONTEXT });
+		CountingProcessor processor = createProcessor();
+		processor.afterPropertiesSet();
+
+		assertThat(processor.resolved, equalTo(0));
+		assertThat(processor.getTarget(), sameInstance(beanFactory.getBean("registry")));
+		assertThat(processor.getMethodName(), equalTo("registerPlugin"));
+
+		Registry registry = (Registry) beanFactory.getBean("registry");
+		Plugin1 plugin = new Plugin1();
+		processor.registerBean(registry, "plugin1", plugin);
+		assertThat(registry.getPlugins().contains(plugin), equalTo(true));
+	}
+
+	@Test public void staleBindingIsResolvedAtRuntime() throws Exception {
+		Properties properties = new Properties();
+		properties.put("registry.registerPlugin.target", "registry");
+		properties.put("registry.registerPlugin.targetClass", "com.example.RemovedRegistry");
+		properties.put("registry.registerPlugin.method", "com.example.RemovedRegistry#registerPlugin(java.lang.Object)");
+		OutputStream out = new FileOutputStream(bindingsFile);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+		CountingProcessor processor = createProcessor();
+		processor.afterPropertiesSet();
+
+		assertThat(processor.resolved, equalTo(1));
+		assertThat(processor.getTargetMethod().getName(), equalTo("registerPlugin"));
+	}
+
+	@Test public void missingBindingsAreResolvedAtRuntime() throws Exception {
+		CountingProcessor processor = createProcessor();
+		processor.afterPropertiesSet();
+
+		assertThat(processor.resolved, equalTo(1));
+		assertThat(processor.getTarget(), sameInstance(beanFactory.getBean("registry")));
+	}
+
+	private CountingProcessor createProcessor() {
+		CountingProcessor processor = new CountingProcessor();
+		processor.setBeanName("registry.registerPlugin");
+		processor.setBeanFactory(beanFactory);
+		processor.setBindings(new FileSystemResource(bindingsFile));
+		return processor;
+	}
+
+	static class CountingProcessor extends RegisteringBeanPostProcessor {
+		int resolved = 0;
+
+		@Override
+		protected Method findMatchingMethod(Class<?> clazz, String name, Class<?> parameterType) {
+			resolved++;
+			return super.findMatchingMethod(clazz, name, parameterType);
+		}
+	}
+}
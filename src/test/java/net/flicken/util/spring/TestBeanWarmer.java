@@ -0,0 +1,122 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.matchers.JUnitMatchers.hasItems;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Resource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class TestBeanWarmer {
+	@Resource ApplicationContext context;
+	@Resource Warmable fastCache;
+	@Resource Warmable slowCache;
+	@Resource Warmable other;
+	@Resource CompletionListener completionListener;
+	@Resource BeanWarmer workloadWarmer;
+	
+	@Before public void awaitWarmUp() throws Exception {
+		BeanWarmer warmer = (BeanWarmer) context.getBean("*Cache.warmUp");
+		assertThat(warmer.awaitReady(5000), equalTo(true));
+		completionListener.completed.await(5, TimeUnit.SECONDS);
+	}
+	
+	@Test public void patternAndMethodFromBeanName() {
+		BeanWarmer warmer = (BeanWarmer) context.getBean("*Cache.warmUp");
+		assertThat(warmer.getMethodName(), equalTo("warmUp"));
+		assertThat(warmer.isReady(), equalTo(true));
+		assertThat(warmer.getWarmUpTimes().keySet(), hasItems("fastCache", "slowCache"));
+		assertThat(warmer.getWarmUpTimes().size(), equalTo(2));
+	}
+	
+	@Test public void methodCalledForEachIteration() {
+		assertThat(fastCache.calls.get(), equalTo(10));
+		assertThat(slowCache.calls.get(), equalTo(10));
+	}
+	
+	@Test public void workloadRunsForDuration() {
+		assertThat(other.calls.get(), equalTo(0));
+		assertThat(other.workloadCalls.get(), greaterThan(0));
+	}
+	
+	@Test public void completionIsPublished() {
+		assertThat(completionListener.completed.getCount(), equalTo(0L));
+	}
+
+	@Test public void childContextRefreshIsIgnored() {
+		assertThat(workloadWarmer.isSynchronous(), equalTo(true));
+		int calls = other.workloadCalls.get();
+		GenericApplicationContext child = new GenericApplicationContext(context);
+		child.refresh();
+		child.close();
+		assertThat(other.workloadCalls.get(), equalTo(calls));
+	}
+	
+	@Test public void failedWarmUpIsStillReady() throws Exception {
+		GenericApplicationContext failing = new GenericApplicationContext();
+		RootBeanDefinition definition = new RootBeanDefinition(FailingBean.class);
+		definition.setLazyInit(true);
+		failing.registerBeanDefinition("failingCache", definition);
+		failing.refresh();
+		try {
+			BeanWarmer warmer = new BeanWarmer();
+			warmer.setBeanPattern("*Cache");
+			warmer.setMethodName("toString");
+			warmer.setApplicationContext(failing);
+			warmer.onApplicationEvent(new ContextRefreshedEvent(failing));
+			assertThat(warmer.awaitReady(5000), equalTo(true));
+			assertThat(warmer.getWarmUpTimes().isEmpty(), equalTo(true));
+		} finally {
+			failing.close();
+		}
+	}
+
+	public static class FailingBean {
+		public FailingBean() {
+			throw new IllegalStateException("Cannot be created");
+		}
+	}
+
+	public static class Warmable {
+		AtomicInteger calls = new AtomicInteger();
+		AtomicInteger workloadCalls = new AtomicInteger();
+		
+		public void warmUp() {
+			calls.incrementAndGet();
+		}
+	}
+	
+	public static class CountingWorkload implements BeanWarmer.WarmUpWorkload {
+		public void warmUp(String name, Object bean) {
+			((Warmable) bean).workloadCalls.incrementAndGet();
+		}
+	}
+	
+	public static class CompletionListener implements ApplicationListener {
+		CountDownLatch completed = new CountDownLatch(2);
+		
+		public void onApplicationEvent(ApplicationEvent event) {
+			if (event instanceof BeanWarmer.WarmUpCompletedEvent) {
+				completed.countDown();
+			}
+		}
+	}
+}
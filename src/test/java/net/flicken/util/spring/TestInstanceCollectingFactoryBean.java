@@ -3,6 +3,7 @@ package net.flicken.util.spring;
 import static org.junit.Assert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -58,6 +59,26 @@ public class TestInstanceCollectingFactoryBean extends AbstractTestBeanFiltering
 		}
 	}
 	
+	@SuppressWarnings("unchecked")
+	@Test public void testTypeIndexedCollection() {
+		collectingFactoryBean.setApplicationContext(context);
+		collectingFactoryBean.setBeanClass(Plugin.class);
+		collectingFactoryBean.setCollectionType(TypeIndexedCollection.class);
+
+		TypeIndexedCollection<Plugin> plugins = (TypeIndexedCollection<Plugin>) collectingFactoryBean.getObject();
+		assertThat(plugins.size(), equalTo(PLUGIN_COUNT));
+		assertThat(plugins.getAllOfType(AbstractExtraPlugin1.class), equalTo(Arrays.<AbstractExtraPlugin1>asList(plugin1, extra)));
+		assertThat(plugins.getFirstOfType(Plugin2.class), equalTo(plugin2));
+		assertThat(plugins.getAllOfType(Plugin2.class), sameInstance(plugins.getAllOfType(Plugin2.class)));
+
+		plugins.retainAll(Arrays.asList(plugin1, plugin2));
+		assertThat(plugins.getAllOfType(Plugin.class), equalTo(Arrays.<Plugin>asList(plugin1, plugin2)));
+		plugins.removeAll(Arrays.asList(plugin2));
+		assertThat(plugins.getAllOfType(Plugin.class), equalTo(Arrays.<Plugin>asList(plugin1)));
+		plugins.clear();
+		assertThat(plugins.isEmpty(), equalTo(true));
+	}
+
 	@Override
 	protected InstanceCollectingFactoryBean getBeanFilterer() {
 		return collectingFactoryBean;
@@ -0,0 +1,111 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class TestInstanceCollectingFactoryBeanComposite {
+	@Resource Plugin plugins;
+	@Resource Plugin parallelPlugins;
+	@Resource Plugin noPlugins;
+
+	@Test public void resultsAreAggregatedByReturnType() {
+		assertThat(plugins.accepts("request"), equalTo(true));
+		assertThat(plugins.names(), equalTo(Arrays.asList("accepting", "rejecting", "failing")));
+		assertThat(plugins.describe(), equalTo((Object) "accepting"));
+	}
+
+	@Test public void emptyResultsAreAggregatedByReturnType() {
+		assertThat(noPlugins.accepts("request"), equalTo(false));
+		assertThat(noPlugins.names().isEmpty(), equalTo(true));
+		assertThat(noPlugins.describe(), equalTo(null));
+		assertThat(noPlugins.priority(), equalTo(0));
+	}
+
+	@Test public void exceptionsArePropagated() {
+		try {
+			plugins.process("fail");
+			fail("Expected exception from failing plugin");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), equalTo("failing"));
+		}
+	}
+
+	@Test public void beansAreCalledInParallel() throws Exception {
+		CyclicBarrier barrier = new CyclicBarrier(3);
+		parallelPlugins.await(barrier);
+		assertThat(parallelPlugins.accepts("request"), equalTo(false));
+	}
+
+	@Test public void parallelExceptionsArePropagated() {
+		try {
+			parallelPlugins.process("fail");
+			fail("Expected exception from failing plugin");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), equalTo("failing"));
+		}
+	}
+
+	public static interface Plugin {
+		boolean accepts(String request);
+		List<String> names();
+		Object describe();
+		int priority();
+		void process(String request);
+		void await(CyclicBarrier barrier) throws Exception;
+	}
+
+	public static class NamedPlugin implements Plugin, BeanNameAware {
+		private final boolean accepts;
+		private String name;
+
+		public NamedPlugin(boolean accepts) {
+			this.accepts = accepts;
+		}
+
+		public void setBeanName(String name) {
+			this.name = name;
+		}
+
+		public boolean accepts(String request) {
+			return accepts;
+		}
+
+		public List<String> names() {
+			return Arrays.asList(name);
+		}
+
+		public Object describe() {
+			return name;
+		}
+
+		public int priority() {
+			return 1;
+		}
+
+		public void process(String request) {
+			if (name.equals("failing")) {
+				throw new IllegalStateException(name);
+			}
+		}
+
+		public void await(CyclicBarrier barrier) throws Exception {
+			barrier.await(5, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import javax.annotation.Resource;
+
+import net.flicken.util.spring.InstanceCollectingFactoryBean.LeasedList;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class TestInstanceCollectingFactoryBeanPooled {
+	@Resource ApplicationContext context;
+	@Resource Step singletonStep;
+
+	@Test public void releasedInstancesAreReused() {
+		LeasedList first = (LeasedList) context.getBean("steps");
+		assertThat(first.size(), equalTo(3));
+		assertThat(first.get(0), sameInstance((Object) singletonStep));
+		first.release();
+
+		LeasedList second = (LeasedList) context.getBean("steps");
+		for (int i = 0; i < first.size(); i++) {
+			assertThat(second.get(i), sameInstance(first.get(i)));
+		}
+		second.release();
+	}
+
+	@Test public void leasedInstancesAreNotShared() {
+		LeasedList first = (LeasedList) context.getBean("steps");
+		LeasedList second = (LeasedList) context.getBean("steps");
+		assertThat(second.get(1), not(sameInstance(first.get(1))));
+		assertThat(second.get(2), not(sameInstance(first.get(2))));
+		first.release();
+		second.release();
+	}
+
+	@Test public void poolsAreBounded() {
+		LeasedList first = (LeasedList) context.getBean("steps");
+		LeasedList second = (LeasedList) context.getBean("steps");
+		first.release();
+		second.release();
+		second.release();
+
+		InstanceCollectingFactoryBean factory = (InstanceCollectingFactoryBean) context.getBean("&steps");
+		assertThat(factory.getPool("step1").getIdleCount(), equalTo(1));
+		assertThat(factory.getPool("step2").getIdleCount(), equalTo(1));
+	}
+
+	public static class Step {
+	}
+}
@@ -0,0 +1,84 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.annotation.Resource;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class TestInstanceCollectingFactoryBeanTimed {
+	@Resource ApplicationContext context;
+
+	@SuppressWarnings("unchecked")
+	@Test public void latenciesAreRecordedPerBeanAndMethod() throws Exception {
+		List<Filter> filters = (List<Filter>) context.getBean("filters");
+		assertThat(AopUtils.isJdkDynamicProxy(filters.get(0)), equalTo(true));
+		for (int i = 0; i < 5; i++) {
+			for (Filter filter : filters) {
+				filter.filter("request");
+			}
+		}
+
+		LatencyRecorder recorder = ((InstanceCollectingFactoryBean) context.getBean("&filters")).getLatencyRecorder();
+		assertThat(recorder.getCount("fastFilter", "filter"), equalTo(5L));
+		assertThat(recorder.getCount("slowFilter", "filter"), equalTo(5L));
+		assertThat(recorder.getHistogram("slowFilter", "filter").getPercentile(50), greaterThanOrEqualTo(2000000L));
+		assertThat(recorder.getHistogram("fastFilter", "filter").getPercentile(50), lessThan(2000000L));
+
+		ObjectName name = new ObjectName(InstanceCollectingFactoryBean.OBJECT_NAME_PREFIX + ObjectName.quote("filters"));
+		String[] summary = (String[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Summary");
+		assertThat(summary.length, equalTo(2));
+		assertThat(summary[1].startsWith("slowFilter.filter count=5"), equalTo(true));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test public void singletonProxiesAreReused() {
+		List<Filter> first = (List<Filter>) context.getBean("filters");
+		List<Filter> second = (List<Filter>) context.getBean("filters");
+		assertThat(second.get(0), sameInstance(first.get(0)));
+	}
+
+	@Test public void histogramBucketsBoundValues() {
+		for (long value : new long[] { 0, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE }) {
+			long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+			assertThat(upper, greaterThanOrEqualTo(value));
+			assertThat(upper - value <= value / LatencyHistogram.SUB_BUCKETS, equalTo(true));
+		}
+	}
+
+	public static interface Filter {
+		String filter(String request);
+	}
+
+	public static class FastFilter implements Filter {
+		public String filter(String request) {
+			return request;
+		}
+	}
+
+	public static class SlowFilter implements Filter {
+		public String filter(String request) {
+			try {
+				Thread.sleep(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return request;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Resource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class TestRegisteringBeanPostProcessorLazy {
+	@Resource ApplicationContext context;
+	@Resource PluginRegistry<Handler> handlers;
+	@Resource PluginRegistry<Engine> engines;
+
+	@Test public void onlyUsedBeansAreCreated() {
+		assertThat(handlers.size(), equalTo(3));
+		assertThat(CountingHandler.created.get(), equalTo(1));
+
+		Handler used = handlers.getAll().get(0);
+		assertThat(AopUtils.isJdkDynamicProxy(used), equalTo(true));
+		assertThat(used.handle("a"), equalTo("used:a"));
+		assertThat(used.handle("b"), equalTo("used:b"));
+		assertThat(CountingHandler.created.get(), equalTo(2));
+		assertThat(AopUtils.isAopProxy(handlers.getAll().get(1)), equalTo(true));
+	}
+
+	@Test public void createdBeansAreRegisteredDirectly() {
+		assertThat(handlers.getAll().get(2), sameInstance(context.getBean("eager")));
+	}
+
+	@Test public void classesAreProxiedWithCglib() {
+		Engine engine = engines.getAll().get(0);
+		assertThat(AopUtils.isCglibProxy(engine), equalTo(true));
+		assertThat(engine.start(), equalTo("started"));
+	}
+
+	@Test public void equalsAndHashCodeDoNotCreateBean() {
+		Handler unused = handlers.getAll().get(1);
+		int created = CountingHandler.created.get();
+		assertThat(unused.equals(unused), equalTo(true));
+		assertThat(unused.equals(handlers.getAll().get(0)), equalTo(false));
+		assertThat(unused.hashCode(), equalTo(unused.hashCode()));
+		assertThat(new HashSet<Handler>(handlers.getAll()).contains(unused), equalTo(true));
+		assertThat(CountingHandler.created.get(), equalTo(created));
+	}
+
+	@Test public void unproxyableClassesAreRegisteredEagerly() {
+		assertThat(engines.getAll().get(1), sameInstance(context.getBean("finalEngine")));
+		assertThat(engines.getAll().get(2), sameInstance(context.getBean("namedEngine")));
+		assertThat(engines.getAll().get(2).start(), equalTo("named started"));
+	}
+
+	public static interface Handler {
+		String handle(String request);
+	}
+
+	public static class CountingHandler implements Handler, BeanNameAware {
+		static final AtomicInteger created = new AtomicInteger();
+		private String name;
+
+		public CountingHandler() {
+			created.incrementAndGet();
+		}
+
+		public void setBeanName(String name) {
+			this.name = name;
+		}
+
+		public String handle(String request) {
+			return name + ":" + request;
+		}
+	}
+
+	public static class Engine {
+		public String start() {
+			return "started";
+		}
+	}
+
+	public static final class FinalEngine extends Engine {
+	}
+
+	public static class NamedEngine extends Engine {
+		private final String name;
+
+		public NamedEngine(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String start() {
+			return name + " " + super.start();
+		}
+	}
+}
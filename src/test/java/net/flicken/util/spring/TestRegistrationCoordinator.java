@@ -0,0 +1,59 @@
+package net.flicken.util.spring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import javax.annotation.Resource;
+
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.ExtraPlugin;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin1;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Plugin2;
+import net.flicken.util.spring.AbstractTestBeanFilteringSupport.Registry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class TestRegistrationCoordinator {
+	@Resource ApplicationContext context;
+	@Resource Registry registry;
+	@Resource Registry extraRegistry;
+	@Resource Registry filteredRegistry;
+	@Resource Plugin1 plugin1;
+	@Resource Plugin2 plugin2;
+	@Resource ExtraPlugin extra;
+	
+	@Test public void processorsAreCoordinated() {
+		RegisteringBeanPostProcessor processor = (RegisteringBeanPostProcessor) context.getBean("registry.registerPlugin");
+		assertThat(processor.isCoordinated(), equalTo(true));
+	}
+	
+	@Test public void eachProcessorReceivesItsBeansOnce() {
+		assertThat(registry.getPlugins(), equalTo(Arrays.<Plugin>asList(plugin1, plugin2)));
+		assertThat(extraRegistry.getPlugins(), equalTo(Arrays.<Plugin>asList(plugin1, extra)));
+	}
+
+	@Test public void processorsApplyTheirDefinitionFilters() {
+		assertThat(filteredRegistry.getPlugins(), equalTo(Arrays.<Plugin>asList(plugin1)));
+	}
+
+	@Test public void childContextIsOnlyCoordinatedByItsOwnCoordinator() {
+		ClassPathXmlApplicationContext child = new ClassPathXmlApplicationContext(
+				new String[] { "TestRegistrationCoordinator-child-context.xml" }, getClass(), context);
+		try {
+			Registry childRegistry = (Registry) child.getBean("childRegistry");
+			assertThat(childRegistry.getPlugins(), equalTo(Arrays.<Plugin>asList((Plugin) child.getBean("childPlugin"))));
+			assertThat(registry.getPlugins(), equalTo(Arrays.<Plugin>asList(plugin1, plugin2)));
+		} finally {
+			child.close();
+		}
+	}
+}